@@ -0,0 +1,92 @@
+package nl.mihaly.main;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Event bus for run metrics, used by the GUI dashboard.
+ *
+ * Events are plain method calls on the subscribed listeners, so publishing
+ * allocates nothing and costs only a check when nobody listens. Listeners are
+ * called on the publishing thread and must return quickly.
+ */
+public final class AgentEvents {
+
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private AgentEvents() {
+    }
+
+    /**
+     * Receives run metrics. All methods are optional.
+     */
+    public interface Listener {
+
+        /** A new class is being generated. */
+        default void runStarted(String className) {
+        }
+
+        /** A model request is sent. */
+        default void modelStarted(String model) {
+        }
+
+        /** A model request got its turn in the scheduler, after waiting; depth is the number still queued. */
+        default void modelScheduled(String model, long waitMillis, int queueDepth) {
+        }
+
+        /**
+         * A model request finished, successfully or not. Token counts and durations
+         * come from Ollama's response metadata and are -1 when absent.
+         */
+        default void modelFinished(String model, long millis, long promptTokens, long evalTokens, long evalNanos) {
+        }
+
+        /** A Maven test run finished. */
+        default void mavenFinished(long millis) {
+        }
+
+        /** A cache was consulted, e.g. the memoized test results. */
+        default void cacheLookup(String cache, boolean hit) {
+        }
+
+        /** An iteration of the TDD loop produced a test result. */
+        default void iterationFinished(int iteration, TestResult result) {
+        }
+    }
+
+    public static void subscribe(Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void unsubscribe(Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    static void runStarted(String className) {
+        for (Listener l : LISTENERS) l.runStarted(className);
+    }
+
+    static void modelStarted(String model) {
+        for (Listener l : LISTENERS) l.modelStarted(model);
+    }
+
+    static void modelScheduled(String model, long waitMillis, int queueDepth) {
+        for (Listener l : LISTENERS) l.modelScheduled(model, waitMillis, queueDepth);
+    }
+
+    static void modelFinished(String model, long millis, long promptTokens, long evalTokens, long evalNanos) {
+        for (Listener l : LISTENERS) l.modelFinished(model, millis, promptTokens, evalTokens, evalNanos);
+    }
+
+    static void mavenFinished(long millis) {
+        for (Listener l : LISTENERS) l.mavenFinished(millis);
+    }
+
+    static void cacheLookup(String cache, boolean hit) {
+        for (Listener l : LISTENERS) l.cacheLookup(cache, hit);
+    }
+
+    static void iterationFinished(int iteration, TestResult result) {
+        for (Listener l : LISTENERS) l.iterationFinished(iteration, result);
+    }
+}
@@ -0,0 +1,210 @@
+package nl.mihaly.main;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A long-lived build process of the BuildWorkerPool.
+ *
+ * Listens on a Unix domain socket and runs one Maven build per connection.
+ * The protocol is line based, UTF-8:
+ *
+ * <pre>
+ *   client: BUILD, dir &lt;workspace&gt;, arg &lt;argument&gt;..., go
+ *   worker: out &lt;line&gt;... while Maven runs, then
+ *           done &lt;exit&gt; &lt;millis&gt; &lt;testsRun&gt; &lt;failures&gt; &lt;errors&gt; &lt;green&gt;
+ *   client: CANCEL, or closing the connection, kills the build
+ *
+ *   client: PING   worker: pong &lt;builds&gt;
+ *   client: QUIT   worker exits
+ * </pre>
+ *
+ * The worker warms up before it reports READY on stdout, and exits when the
+ * process that started it exits.
+ */
+public class BuildWorker {
+
+    private int builds;
+
+    /**
+     * Usage: BuildWorker &lt;socket&gt; &lt;parentPid&gt; &lt;mavenCommand&gt;
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BuildWorker <socket> <parentPid> <mavenCommand>");
+            System.exit(2);
+        }
+
+        ProcessHandle.of(Long.parseLong(args[1]))
+                .ifPresentOrElse(p -> p.onExit().thenRun(() -> System.exit(0)), () -> System.exit(0));
+
+        Path socket = Path.of(args[0]);
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            warmUp(args[2]);
+
+            System.out.println("READY");
+            System.out.flush();
+
+            BuildWorker worker = new BuildWorker();
+            while (true) {
+                try (SocketChannel channel = server.accept()) {
+                    worker.serve(new Wire(channel));
+                } catch (IOException e) {
+                    System.err.println("Connection failed: " + e.getMessage());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /**
+     * Runs "mvn -v" once, so the Maven installation is loaded from disk before
+     * the first real build arrives.
+     */
+    private static void warmUp(String mavenCommand) {
+        try {
+            Process p = new ProcessBuilder(mavenCommand, "-v").redirectErrorStream(true).start();
+            p.getInputStream().transferTo(new ByteArrayOutputStream());
+            p.waitFor();
+        } catch (IOException e) {
+            System.err.println("Warm-up failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve(Wire wire) throws IOException {
+        String command = wire.readLine();
+        if (command == null) return;
+
+        switch (command) {
+            case "PING" -> wire.writeLine("pong " + builds);
+            case "QUIT" -> System.exit(0);
+            case "BUILD" -> build(wire);
+            default -> wire.writeLine("error unknown command " + command);
+        }
+    }
+
+    private void build(Wire wire) throws IOException {
+        Path dir = null;
+        List<String> cmd = new ArrayList<>();
+        for (String line = wire.readLine(); !"go".equals(line); line = wire.readLine()) {
+            if (line == null) return;
+            if (line.startsWith("dir ")) dir = Path.of(line.substring(4));
+            if (line.startsWith("arg ")) cmd.add(line.substring(4));
+        }
+        if (dir == null || cmd.isEmpty()) {
+            wire.writeLine("error incomplete build request");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.directory(dir.toFile());
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        builds++;
+
+        // The client cancels by sending CANCEL or by going away.
+        Thread watcher = new Thread(() -> {
+            try {
+                String line;
+                do {
+                    line = wire.readLine();
+                } while (line != null && !"CANCEL".equals(line));
+            } catch (IOException ignored) {
+                // Treated like a closed connection.
+            }
+            if (p.isAlive()) kill(p);
+        }, "build-cancel");
+        watcher.setDaemon(true);
+        watcher.start();
+
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+                wire.writeLine("out " + line);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // The client is gone or Maven was killed; either way the build is over.
+            kill(p);
+        }
+
+        try {
+            int exit = p.waitFor();
+            TestResult result = TestResult.parse(output.toString());
+            wire.writeLine("done " + exit + " " + (System.currentTimeMillis() - start) + " " + result.testsRun
+                    + " " + result.failures + " " + result.errors + " " + result.green);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            kill(p);
+        }
+    }
+
+    private static void kill(Process p) {
+        p.descendants().forEach(ProcessHandle::destroyForcibly);
+        p.destroyForcibly();
+    }
+
+    // ------------------------------------------------------------
+    // WIRE FORMAT
+    // ------------------------------------------------------------
+
+    /**
+     * Line-based UTF-8 over a socket channel. Reading and writing may happen
+     * on different threads at the same time, which the stream adapters of
+     * Channels do not allow.
+     */
+    static class Wire {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(8192).flip();
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        Wire(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Returns the next line without its newline, or null at the end of the stream.
+         */
+        String readLine() throws IOException {
+            line.reset();
+            while (true) {
+                while (in.hasRemaining()) {
+                    byte b = in.get();
+                    if (b == '\n') return line.toString(StandardCharsets.UTF_8);
+                    line.write(b);
+                }
+                in.clear();
+                int n = channel.read(in);
+                in.flip();
+                if (n < 0) return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            }
+        }
+
+        synchronized void writeLine(String text) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap((text.replace('\n', ' ') + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
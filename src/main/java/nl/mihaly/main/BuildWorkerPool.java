@@ -0,0 +1,368 @@
+package nl.mihaly.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * A pool of BuildWorker processes that run the Maven builds of all agents in
+ * this JVM, so build capacity is capped and reused independently of how many
+ * agents or candidates are active.
+ *
+ * Only used on Linux. The number of workers is build.workers, by default half
+ * the available cores. Workers are started ahead of use, pinged every
+ * build.workers.healthCheckSeconds, replaced when they die or stop answering,
+ * and recycled after build.workers.recycleAfter builds to bound their memory.
+ * When no worker can be used, MavenRunner runs the build itself.
+ */
+public class BuildWorkerPool {
+
+    private static final long READY_TIMEOUT_SECONDS = 60;
+    private static final long PING_TIMEOUT_SECONDS = 5;
+
+    private static BuildWorkerPool shared;
+    private static boolean unavailable;
+
+    private final Consumer<String> logger;
+    private final int size;
+    private final int recycleAfter;
+    private final Path socketDir;
+    private final ExecutorService starter;
+
+    // Guarded by this.
+    private final Deque<Worker> idle = new ArrayDeque<>();
+    private int live;
+    private int starting;
+    private int nextId;
+
+    private static class Worker {
+        final int id;
+        final Process process;
+        final UnixDomainSocketAddress address;
+        int builds;
+
+        Worker(int id, Process process, Path socket) {
+            this.id = id;
+            this.process = process;
+            this.address = UnixDomainSocketAddress.of(socket);
+        }
+    }
+
+    private BuildWorkerPool(Consumer<String> logger, int size, int recycleAfter, Path socketDir) {
+        this.logger = logger;
+        this.size = size;
+        this.recycleAfter = Math.max(1, recycleAfter);
+        this.socketDir = socketDir;
+        this.starter = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "build-worker-start");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the pool shared by all agents, or null if build workers are
+     * disabled, not supported on this system or cannot be set up.
+     */
+    public static synchronized BuildWorkerPool shared(Consumer<String> logger) {
+        if (shared != null || unavailable) return shared;
+
+        int size = Settings.getInt("build.workers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        if (size <= 0 || !System.getProperty("os.name").toLowerCase().contains("linux")) {
+            unavailable = true;
+            return null;
+        }
+
+        try {
+            Path dir = Files.createTempDirectory("codingai-workers-",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            shared = new BuildWorkerPool(logger, size, Settings.getInt("build.workers.recycleAfter", 25), dir);
+        } catch (IOException e) {
+            logger.accept("Cannot create build worker directory, building in process: " + e.getMessage());
+            unavailable = true;
+            return null;
+        }
+
+        for (int i = 0; i < size; i++) {
+            shared.startWorker();
+        }
+        shared.startHealthChecks(Settings.getInt("build.workers.healthCheckSeconds", 30));
+        // Workers exit by themselves with this JVM; only their sockets and logs are left to clean up.
+        Runtime.getRuntime().addShutdownHook(new Thread(shared::deleteSocketDir, "build-worker-cleanup"));
+        logger.accept("Starting " + size + " build workers");
+        return shared;
+    }
+
+    /**
+     * Runs the Maven command in the workspace on a worker and returns its
+     * output, or null if no worker could run it. A cancelled token kills the
+     * build; the output so far is returned.
+     */
+    @SuppressWarnings("try")
+    public String run(Path workspace, List<String> cmd, CancellationToken token) {
+        Worker worker = borrow(token);
+        if (worker == null) return null;
+
+        StringBuilder output = new StringBuilder();
+        String done = null;
+
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(worker.address);
+            BuildWorker.Wire wire = new BuildWorker.Wire(channel);
+
+            wire.writeLine("BUILD");
+            wire.writeLine("dir " + workspace.toAbsolutePath());
+            for (String arg : cmd) {
+                wire.writeLine("arg " + arg);
+            }
+            wire.writeLine("go");
+
+            try (CancellationToken.Registration ignored = token.onCancel(() -> cancel(wire))) {
+                for (String line = wire.readLine(); line != null; line = wire.readLine()) {
+                    if (line.startsWith("out ")) {
+                        output.append(line, 4, line.length()).append('\n');
+                    } else if (line.startsWith("done ")) {
+                        done = line;
+                        break;
+                    } else if (line.startsWith("error ")) {
+                        logger.accept("Build worker " + worker.id + ": " + line.substring(6));
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!token.isCancelled()) {
+                logger.accept("Build worker " + worker.id + " failed: " + e.getMessage());
+            }
+        }
+
+        if (done == null && !token.isCancelled()) {
+            // The worker broke down mid-build; replace it and let the caller build in process.
+            retire(worker, false);
+            return null;
+        }
+
+        if (done != null) {
+            String[] f = done.split(" ");
+            logger.accept("Build worker " + worker.id + ": exit " + f[1] + " in " + f[2] + " ms, tests "
+                    + f[3] + ", failures " + f[4] + ", errors " + f[5] + (Boolean.parseBoolean(f[6]) ? ", green" : ""));
+        }
+        giveBack(worker);
+        return output.toString();
+    }
+
+    private void cancel(BuildWorker.Wire wire) {
+        try {
+            wire.writeLine("CANCEL");
+        } catch (IOException ignored) {
+            // The connection is gone, which cancels the build as well.
+        }
+    }
+
+    // ------------------------------------------------------------
+    // WORKERS
+    // ------------------------------------------------------------
+
+    /**
+     * Waits for an idle worker. Returns null when cancelled or when no worker is running or starting.
+     */
+    @SuppressWarnings("try")
+    private synchronized Worker borrow(CancellationToken token) {
+        try (CancellationToken.Registration ignored = token.onCancel(this::wakeUp)) {
+            while (idle.isEmpty()) {
+                if (token.isCancelled() || live + starting == 0) return null;
+                wait(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return idle.poll();
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    private void giveBack(Worker worker) {
+        if (++worker.builds >= recycleAfter) {
+            logger.accept("Recycling build worker " + worker.id + " after " + worker.builds + " builds");
+            retire(worker, true);
+            return;
+        }
+        synchronized (this) {
+            idle.add(worker);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops the worker and starts a fresh one in its place.
+     */
+    private void retire(Worker worker, boolean graceful) {
+        synchronized (this) {
+            idle.remove(worker);
+            live--;
+        }
+        if (graceful) {
+            try (SocketChannel channel = SocketChannel.open(worker.address)) {
+                new BuildWorker.Wire(channel).writeLine("QUIT");
+            } catch (IOException ignored) {
+                // Killed below.
+            }
+        }
+        worker.process.onExit().completeOnTimeout(null, 5, TimeUnit.SECONDS)
+                .thenRun(() -> worker.process.destroyForcibly());
+        startWorker();
+    }
+
+    private void startWorker() {
+        int id;
+        synchronized (this) {
+            id = ++nextId;
+            starting++;
+        }
+        starter.execute(() -> {
+            Worker worker = launch(id);
+            synchronized (this) {
+                starting--;
+                if (worker != null) {
+                    live++;
+                    idle.add(worker);
+                }
+                notifyAll();
+            }
+        });
+    }
+
+    /**
+     * Starts a worker process and waits until it has warmed up. Returns null on failure.
+     */
+    private Worker launch(int id) {
+        Path socket = socketDir.resolve("worker-" + id + ".sock");
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        cmd.add("-Xmx64m");
+        cmd.add("-XX:+UseSerialGC");
+        cmd.add("-XX:TieredStopAtLevel=1");
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(BuildWorker.class.getName());
+        cmd.add(socket.toString());
+        cmd.add(String.valueOf(ProcessHandle.current().pid()));
+        cmd.add(MavenRunner.mavenCommand());
+
+        Process process = null;
+        try {
+            process = new ProcessBuilder(cmd)
+                    .redirectError(ProcessBuilder.Redirect.appendTo(socketDir.resolve("worker-" + id + ".log").toFile()))
+                    .start();
+            Process started = process;
+
+            Future<String> ready = starter.submit(() ->
+                    new BufferedReader(new InputStreamReader(started.getInputStream())).readLine());
+            if ("READY".equals(ready.get(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS))) {
+                return new Worker(id, process, socket);
+            }
+            logger.accept("Build worker " + id + " did not start; see " + socketDir.resolve("worker-" + id + ".log"));
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            logger.accept("Build worker " + id + " did not start: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (process != null) process.destroyForcibly();
+        return null;
+    }
+
+    // ------------------------------------------------------------
+    // HEALTH CHECKS
+    // ------------------------------------------------------------
+
+    private void startHealthChecks(int intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "build-worker-health");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkIdle, intervalSeconds, Math.max(1, intervalSeconds), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Pings the idle workers; busy ones prove they are alive by building.
+     */
+    private void checkIdle() {
+        List<Worker> toCheck;
+        synchronized (this) {
+            toCheck = new ArrayList<>(idle);
+            idle.removeAll(toCheck);
+        }
+
+        for (Worker worker : toCheck) {
+            if (ping(worker)) {
+                synchronized (this) {
+                    idle.add(worker);
+                    notifyAll();
+                }
+            } else {
+                logger.accept("Build worker " + worker.id + " failed its health check; replacing it");
+                worker.process.destroyForcibly();
+                synchronized (this) {
+                    live--;
+                }
+                startWorker();
+            }
+        }
+    }
+
+    private boolean ping(Worker worker) {
+        if (!worker.process.isAlive()) return false;
+
+        Future<String> answer = starter.submit(() -> {
+            try (SocketChannel channel = SocketChannel.open(worker.address)) {
+                BuildWorker.Wire wire = new BuildWorker.Wire(channel);
+                wire.writeLine("PING");
+                return wire.readLine();
+            }
+        });
+        try {
+            String pong = answer.get(PING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return pong != null && pong.startsWith("pong ");
+        } catch (ExecutionException | TimeoutException e) {
+            answer.cancel(true);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    private void deleteSocketDir() {
+        try (var files = Files.list(socketDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(socketDir);
+        } catch (IOException ignored) {
+            // A temporary directory; the system cleans it up eventually.
+        }
+    }
+
+    /**
+     * Returns a status line for logging.
+     */
+    public synchronized String describe() {
+        return "Build workers: " + live + "/" + size + " running, " + idle.size() + " idle, " + starting + " starting";
+    }
+}
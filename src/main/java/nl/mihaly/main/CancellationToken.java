@@ -0,0 +1,141 @@
+package nl.mihaly.main;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cooperative cancellation for one run, with an optional deadline.
+ *
+ * Long-running work checks isCancelled() between steps. Work that blocks,
+ * such as an HTTP request or a Maven process, registers a callback with
+ * onCancel() that aborts it, so a cancel takes effect right away instead of
+ * at the next check. When the deadline passes the token cancels itself.
+ */
+public class CancellationToken {
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cancellation-deadline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final List<Runnable> callbacks = new ArrayList<>();
+
+    private volatile String reason;
+    private long deadline;
+    private ScheduledFuture<?> deadlineTimer;
+
+    /**
+     * Handle to remove a cancel callback once the guarded work has finished.
+     * Meant for try-with-resources; as the body never uses it, methods doing so
+     * suppress javac's "try" lint warning.
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Cancels the run. Callbacks run once, on the calling thread.
+     */
+    public void cancel(String why) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (reason != null) return;
+            reason = why;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+            if (deadlineTimer != null) deadlineTimer.cancel(false);
+        }
+        for (Runnable callback : toRun) {
+            try {
+                callback.run();
+            } catch (RuntimeException ignored) {
+                // Aborting is best effort; the other callbacks must still run.
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /**
+     * Why the run was cancelled, or null if it was not.
+     */
+    public String reason() {
+        return reason;
+    }
+
+    /**
+     * Cancels the run automatically once the given time from now has passed.
+     */
+    public synchronized void setDeadline(Duration timeout) {
+        if (deadlineTimer != null) deadlineTimer.cancel(false);
+        deadline = System.currentTimeMillis() + timeout.toMillis();
+        deadlineTimer = TIMER.schedule(() -> cancel("Deadline of " + format(timeout) + " reached"),
+                timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Milliseconds until the deadline, or -1 if there is none.
+     */
+    public synchronized long remainingMillis() {
+        if (deadline == 0) return -1;
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Registers work to abort on cancel. If the token is already cancelled the
+     * callback runs immediately.
+     */
+    public Registration onCancel(Runnable callback) {
+        synchronized (this) {
+            if (reason == null) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (CancellationToken.this) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+        callback.run();
+        return () -> { };
+    }
+
+    /**
+     * Parses durations such as "90s", "30m", "2h" or ISO-8601 ("PT30M").
+     * A plain number is taken as minutes. Returns null if the text is invalid.
+     */
+    public static Duration parseDuration(String text) {
+        if (text == null || text.isBlank()) return null;
+        String t = text.trim().toLowerCase();
+
+        try {
+            if (t.startsWith("pt")) return Duration.parse(t.toUpperCase());
+
+            char unit = t.charAt(t.length() - 1);
+            if (Character.isDigit(unit)) return Duration.ofMinutes(Long.parseLong(t));
+
+            long amount = Long.parseLong(t.substring(0, t.length() - 1));
+            return switch (unit) {
+                case 's' -> Duration.ofSeconds(amount);
+                case 'm' -> Duration.ofMinutes(amount);
+                case 'h' -> Duration.ofHours(amount);
+                default -> null;
+            };
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String format(Duration d) {
+        return d.toSeconds() % 60 == 0 ? d.toMinutes() + " min" : d.toSeconds() + " s";
+    }
+}
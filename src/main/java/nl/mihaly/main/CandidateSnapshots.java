@@ -0,0 +1,52 @@
+package nl.mihaly.main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps every tested candidate of a run with its test result, so the agent can
+ * roll back to the best candidate so far instead of building on a worse one.
+ */
+public class CandidateSnapshots {
+
+    /**
+     * One tested candidate.
+     */
+    public static class Snapshot {
+        public final int iteration;
+        public final String source;
+        public final TestResult result;
+
+        Snapshot(int iteration, String source, TestResult result) {
+            this.iteration = iteration;
+            this.source = source;
+            this.result = result;
+        }
+    }
+
+    private final List<Snapshot> snapshots = new ArrayList<>();
+    private Snapshot best;
+
+    public synchronized void record(int iteration, String source, TestResult result) {
+        if (source == null) return;
+
+        Snapshot snapshot = new Snapshot(iteration, source, result);
+        snapshots.add(snapshot);
+
+        // On a tie the newest candidate wins, so the loop keeps moving.
+        if (best == null || result.failureCount() <= best.result.failureCount()) {
+            best = snapshot;
+        }
+    }
+
+    /**
+     * Returns the candidate with the fewest failures, or null if nothing was tested yet.
+     */
+    public synchronized Snapshot best() {
+        return best;
+    }
+
+    public synchronized int size() {
+        return snapshots.size();
+    }
+}
@@ -0,0 +1,494 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages class-data-sharing (AppCDS) archives to speed up JVM startup.
+ *
+ * Surefire puts target/classes and target/test-classes on the classpath, and
+ * the JVM refuses to archive from directories, so the archives hold the JDK
+ * classes a JVM loads beyond the default CDS archive (reflection, management,
+ * concurrency, Swing...). Such an archive is valid for any classpath.
+ *
+ * Test JVM: the first Maven run of a project writes the loaded class list;
+ * the archive is then dumped in the background and passed to Surefire through
+ * -DargLine on later runs. Archives are keyed by the pom.xml content and the
+ * JDK, so a changed pom produces a new one. The recording run uses a single
+ * reused fork, since parallel forks would all write the same class list.
+ *
+ * -DargLine replaces the project's own argLine property, so a plain value of
+ * that property is appended to ours. Projects that set argLine in the Surefire
+ * configuration (where -DargLine is ignored) or build it from other properties
+ * (${...}, @{...} for agents) run without CDS, as do projects whose Surefire
+ * configuration fixes several or non-reused forks and projects whose recording
+ * run wrote no class list.
+ *
+ * Launcher: "java nl.mihaly.main.CdsArchives --train" creates an archive for
+ * CodingAI itself and prints how to start with it and the measured startup time.
+ */
+public class CdsArchives {
+
+    private static final String MODE_ARCHIVE = "with CDS archive";
+    private static final String MODE_TRAINING = "recording class list";
+    private static final String MODE_NONE = "without CDS archive";
+
+    private static final Pattern PROPERTIES = Pattern.compile("(?s)<properties>.*?</properties>");
+    private static final Pattern ARG_LINE = Pattern.compile("(?s)<argLine>(.*?)</argLine>");
+    private static final Pattern FORK_COUNT = Pattern.compile("(?s)<forkCount>\\s*(.*?)\\s*</forkCount>");
+
+    private static CdsArchives shared;
+
+    private final Consumer<String> logger;
+    private final boolean enabled;
+    private final Path dir;
+    private final Set<String> training = new HashSet<>();
+    private final Set<String> unsupported = new HashSet<>();
+    private final Map<String, long[]> buildTimes = new TreeMap<>();
+    private final ExecutorService dumper = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "cds-dump");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * How one Maven run uses the test JVM archive.
+     */
+    public static class Launch {
+        public final List<String> mavenArgs;
+        final String mode;
+        final String key;
+        final Path classList;
+
+        Launch(List<String> mavenArgs, String mode, String key, Path classList) {
+            this.mavenArgs = mavenArgs;
+            this.mode = mode;
+            this.key = key;
+            this.classList = classList;
+        }
+    }
+
+    private CdsArchives(Consumer<String> logger) {
+        this.logger = logger;
+        this.enabled = Settings.getBoolean("cds.enabled", true);
+        this.dir = Paths.get(Settings.get("cds.dir",
+                Paths.get(System.getProperty("user.home"), ".codingai", "cds").toString()));
+    }
+
+    public static synchronized CdsArchives shared(Consumer<String> logger) {
+        if (shared == null) {
+            shared = new CdsArchives(logger);
+        }
+        return shared;
+    }
+
+    // ------------------------------------------------------------
+    // TEST JVM
+    // ------------------------------------------------------------
+
+    /**
+     * Returns the Maven arguments for the next test run of the project: use the
+     * archive if it exists, otherwise record the loaded classes to create one.
+     */
+    public synchronized Launch prepare(Path projectRoot) {
+        if (!enabled) return new Launch(List.of(), MODE_NONE, null, null);
+
+        String key = projectKey(projectRoot);
+        if (unsupported.contains(key)) return new Launch(List.of(), MODE_NONE, key, null);
+
+        String projectArgLine = projectArgLine(projectRoot);
+        if (projectArgLine == null) {
+            unsupported.add(key);
+            return new Launch(List.of(), MODE_NONE, key, null);
+        }
+
+        Path archive = dir.resolve(key + ".jsa");
+
+        if (Files.exists(archive)) {
+            return new Launch(List.of(argLine("-XX:SharedArchiveFile=" + quote(archive) + " -Xshare:auto -Xlog:cds=off",
+                    projectArgLine)), MODE_ARCHIVE, key, null);
+        }
+
+        if (configuresForks(projectRoot)) {
+            unsupported.add(key);
+            return new Launch(List.of(), MODE_NONE, key, null);
+        }
+
+        if (!training.add(key)) {
+            // Another build of the same project is recording already.
+            return new Launch(List.of(), MODE_NONE, key, null);
+        }
+
+        try {
+            Files.createDirectories(dir);
+            Path classList = Files.createTempFile(dir, key + "-", ".classlist");
+            Files.delete(classList); // The JVM creates it; an empty file would look like a failed run.
+            // These come after any parallel-test arguments, so they win.
+            return new Launch(List.of(argLine("-XX:DumpLoadedClassList=" + quote(classList), projectArgLine),
+                    "-DforkCount=1", "-DreuseForks=true"), MODE_TRAINING, key, classList);
+        } catch (IOException e) {
+            training.remove(key);
+            logger.accept("Cannot prepare CDS class list: " + e.getMessage());
+            return new Launch(List.of(), MODE_NONE, key, null);
+        }
+    }
+
+    /**
+     * Records the duration of a Maven run and, after a recording run, dumps
+     * the archive in the background.
+     */
+    public void finish(Launch launch, long millis) {
+        synchronized (this) {
+            long[] t = buildTimes.computeIfAbsent(launch.mode, m -> new long[2]);
+            t[0]++;
+            t[1] += millis;
+        }
+
+        if (!launch.mode.equals(MODE_TRAINING)) return;
+
+        dumper.submit(() -> {
+            try {
+                Path archive = dir.resolve(launch.key + ".jsa");
+                if (!Files.exists(launch.classList)) {
+                    // The test JVM did not get our argLine; recording again would not help.
+                    logger.accept("Test JVM wrote no CDS class list; running this project without CDS.");
+                    synchronized (this) {
+                        unsupported.add(launch.key);
+                    }
+                } else if (dump(launch.classList, archive, testJava())) {
+                    logger.accept("Created CDS archive for test JVMs: " + archive);
+                }
+            } finally {
+                deleteQuietly(launch.classList);
+                synchronized (this) {
+                    training.remove(launch.key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Average Maven run time with and without the archive.
+     */
+    public synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        if (!enabled) return lines;
+
+        for (Map.Entry<String, long[]> e : buildTimes.entrySet()) {
+            long[] t = e.getValue();
+            lines.add(String.format("Maven runs %s: %d, avg %d ms", e.getKey(), t[0], t[1] / t[0]));
+        }
+
+        long[] with = buildTimes.get(MODE_ARCHIVE);
+        long[] without = buildTimes.getOrDefault(MODE_NONE, buildTimes.get(MODE_TRAINING));
+        if (with != null && without != null) {
+            lines.add("CDS saving per Maven run: " + (without[1] / without[0] - with[1] / with[0]) + " ms");
+        }
+        return lines;
+    }
+
+    /**
+     * Key of the test JVM archive: pom.xml content (a proxy for the test
+     * classpath) and the JDK that Maven runs with.
+     */
+    private String projectKey(Path projectRoot) {
+        String pom;
+        try {
+            pom = Files.readString(projectRoot.resolve("pom.xml"), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            pom = projectRoot.toAbsolutePath().toString();
+        }
+        return "test-" + ProjectIndex.sha256(pom + "\n" + testJava()).substring(0, 16);
+    }
+
+    /**
+     * The java executable Maven forks, which is the one under JAVA_HOME.
+     */
+    private static Path testJava() {
+        String home = System.getenv("JAVA_HOME");
+        if (home == null || home.isBlank()) home = System.getProperty("java.home");
+        return javaExecutable(Paths.get(home));
+    }
+
+    /**
+     * Returns the project's own argLine to pass along with ours ("" if there is
+     * none), or null if -DargLine would drop or not reach the project's flags.
+     */
+    private String projectArgLine(Path projectRoot) {
+        String value = "";
+        for (Path module : LeanBuild.shared(logger).modules(projectRoot)) {
+            String pom;
+            try {
+                pom = Files.readString(module.resolve("pom.xml"), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                continue;
+            }
+
+            String outsideProperties = PROPERTIES.matcher(pom).replaceAll("");
+            if (ARG_LINE.matcher(outsideProperties).find()) {
+                logger.accept("Surefire argLine is configured in " + module.resolve("pom.xml")
+                        + "; running tests without CDS.");
+                return null;
+            }
+
+            Matcher m = PROPERTIES.matcher(pom);
+            while (m.find()) {
+                Matcher arg = ARG_LINE.matcher(m.group());
+                if (!arg.find()) continue;
+                String own = arg.group(1).trim().replaceAll("\\s+", " ");
+                if (own.contains("${") || own.contains("@{")) {
+                    logger.accept("argLine property in " + module.resolve("pom.xml")
+                            + " refers to other properties; running tests without CDS.");
+                    return null;
+                }
+                if (!value.isEmpty() && !own.isEmpty() && !own.equals(value)) {
+                    logger.accept("Modules set different argLine properties; running tests without CDS.");
+                    return null;
+                }
+                if (!own.isEmpty()) value = own;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * True if a Surefire configuration sets forkCount or reuseForks itself, where
+     * -D cannot bring the recording run down to one reused fork.
+     */
+    private boolean configuresForks(Path projectRoot) {
+        for (Path module : LeanBuild.shared(logger).modules(projectRoot)) {
+            String pom;
+            try {
+                pom = Files.readString(module.resolve("pom.xml"), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                continue;
+            }
+
+            String outsideProperties = PROPERTIES.matcher(pom).replaceAll("");
+            Matcher m = FORK_COUNT.matcher(outsideProperties);
+            while (m.find()) {
+                if (!m.group(1).equals("1") && !m.group(1).equals("${forkCount}")) {
+                    logger.accept("Surefire forkCount is configured in " + module.resolve("pom.xml")
+                            + "; running tests without CDS.");
+                    return true;
+                }
+            }
+            if (outsideProperties.contains("<reuseForks>false</reuseForks>")) {
+                logger.accept("Surefire reuseForks is off in " + module.resolve("pom.xml")
+                        + "; running tests without CDS.");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String argLine(String value, String projectArgLine) {
+        return "-DargLine=" + (projectArgLine.isEmpty() ? value : value + " " + projectArgLine);
+    }
+
+    private static String quote(Path path) {
+        String s = path.toString();
+        return s.contains(" ") ? "\"" + s + "\"" : s;
+    }
+
+    // ------------------------------------------------------------
+    // DUMPING
+    // ------------------------------------------------------------
+
+    /**
+     * Keeps only JDK classes from the class list and dumps a static archive
+     * from them. Written to a temporary file first, so a JVM never sees a
+     * half-written archive.
+     */
+    private boolean dump(Path classList, Path archive, Path java) {
+        try {
+            List<String> jdkOnly = new ArrayList<>();
+            for (String line : Files.readAllLines(classList, StandardCharsets.UTF_8)) {
+                if (isJdkEntry(line)) jdkOnly.add(line);
+            }
+
+            Path filtered = Files.createTempFile(dir, "jdk-", ".classlist");
+            Path tmp = Files.createTempFile(dir, "archive-", ".tmp");
+            try {
+                Files.write(filtered, jdkOnly, StandardCharsets.UTF_8);
+                Files.delete(tmp);
+
+                long start = System.currentTimeMillis();
+                Process p = new ProcessBuilder(java.toString(), "-Xshare:dump",
+                        "-XX:SharedClassListFile=" + filtered, "-XX:SharedArchiveFile=" + tmp)
+                        .redirectErrorStream(true)
+                        .start();
+                String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+                if (p.waitFor() != 0 || !Files.exists(tmp)) {
+                    logger.accept("CDS dump failed: " + output.lines().reduce((a, b) -> b).orElse(""));
+                    return false;
+                }
+                Files.move(tmp, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logger.accept("Dumped " + jdkOnly.size() + " classes into " + archive.getFileName()
+                        + " in " + (System.currentTimeMillis() - start) + " ms");
+                return true;
+            } finally {
+                deleteQuietly(filtered);
+                deleteQuietly(tmp);
+            }
+        } catch (IOException e) {
+            logger.accept("CDS dump failed: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Class list entries look like "java/lang/Object id: 0" or
+     * "@lambda-proxy java/util/... ". Classes that the platform class loader
+     * cannot see come from the classpath and cannot be archived here.
+     */
+    private static boolean isJdkEntry(String line) {
+        if (line.isBlank() || line.startsWith("#")) return false;
+
+        String[] parts = line.trim().split("\\s+");
+        String name;
+        if (parts[0].equals("@lambda-proxy")) {
+            if (parts.length < 2) return false;
+            name = parts[1];
+        } else if (parts[0].startsWith("@")) {
+            return true; // @lambda-form-invoker: JDK internal
+        } else {
+            name = parts[0];
+        }
+
+        if (name.contains("$$Lambda") || name.startsWith("jdk/proxy")) return false;
+        return ClassLoader.getPlatformClassLoader().getResource(name + ".class") != null;
+    }
+
+    private static Path javaExecutable(Path javaHome) {
+        boolean windows = System.getProperty("os.name").toLowerCase().contains("win");
+        return javaHome.resolve("bin").resolve(windows ? "java.exe" : "java");
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // A leftover temp file is harmless.
+        }
+    }
+
+    // ------------------------------------------------------------
+    // LAUNCHER
+    // ------------------------------------------------------------
+
+    /**
+     * Creates the archive for CodingAI itself by running a warm-up JVM that
+     * loads the GUI, HTTP and file classes. Returns the archive, or null.
+     */
+    public Path trainLauncher() {
+        Path archive = dir.resolve("codingai.jsa");
+        Path java = javaExecutable(Paths.get(System.getProperty("java.home")));
+        String classpath = System.getProperty("java.class.path");
+
+        try {
+            Files.createDirectories(dir);
+            Path classList = Files.createTempFile(dir, "codingai-", ".classlist");
+            try {
+                Files.delete(classList);
+                Process p = new ProcessBuilder(java.toString(), "-XX:DumpLoadedClassList=" + classList,
+                        "-cp", classpath, CdsArchives.class.getName(), "--warmup")
+                        .redirectErrorStream(true)
+                        .start();
+                p.getInputStream().readAllBytes();
+                if (p.waitFor() != 0 || !Files.exists(classList)) {
+                    logger.accept("Warm-up run failed; no launcher archive created.");
+                    return null;
+                }
+                return dump(classList, archive, java) ? archive : null;
+            } finally {
+                deleteQuietly(classList);
+            }
+        } catch (IOException e) {
+            logger.accept("Cannot create launcher archive: " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Average wall time of warm-up runs with the given extra JVM options.
+     */
+    private long measureStartup(List<String> jvmOptions, int runs) throws IOException, InterruptedException {
+        Path java = javaExecutable(Paths.get(System.getProperty("java.home")));
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(java.toString());
+            cmd.addAll(jvmOptions);
+            cmd.addAll(List.of("-cp", System.getProperty("java.class.path"), CdsArchives.class.getName(), "--warmup"));
+
+            long start = System.nanoTime();
+            Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+            p.getInputStream().readAllBytes();
+            p.waitFor();
+            total += (System.nanoTime() - start) / 1_000_000;
+        }
+        return total / runs;
+    }
+
+    /**
+     * Loads the classes CodingAI needs at startup, then exits.
+     */
+    private static void warmup() throws Exception {
+        java.net.http.HttpClient.newHttpClient();
+        java.util.regex.Pattern.compile("(?m)^\\s*package\\s+([\\w.]+)\\s*;").matcher("package a;").find();
+        try (var files = Files.walk(Paths.get(System.getProperty("java.io.tmpdir")), 1)) {
+            files.count();
+        }
+
+        if (java.awt.GraphicsEnvironment.isHeadless()) {
+            new javax.swing.JScrollPane(new javax.swing.JTextArea());
+            new javax.swing.JPanel(new java.awt.BorderLayout()).add(new javax.swing.JButton("warmup"));
+            new javax.swing.JTextField(30);
+        } else {
+            javax.swing.SwingUtilities.invokeAndWait(() -> new CodingAIGui().dispose());
+        }
+    }
+
+    /**
+     * Usage: CdsArchives --train
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals("--warmup")) {
+            warmup();
+            System.exit(0);
+        }
+
+        if (args.length != 1 || !args[0].equals("--train")) {
+            System.err.println("Usage: CdsArchives --train");
+            System.exit(2);
+        }
+
+        CdsArchives cds = new CdsArchives(System.out::println);
+        Path archive = cds.trainLauncher();
+        if (archive == null) System.exit(1);
+
+        long without = cds.measureStartup(List.of(), 3);
+        long with = cds.measureStartup(List.of("-XX:SharedArchiveFile=" + archive, "-Xshare:auto"), 3);
+        System.out.println("Startup without archive: " + without + " ms, with archive: " + with + " ms");
+        System.out.println("Start CodingAI with:");
+        System.out.println("  java -XX:SharedArchiveFile=" + quote(archive) + " -Xshare:auto -cp <classpath> "
+                + CodingAIGui.class.getName());
+        System.exit(0);
+    }
+}
@@ -1,6 +1,10 @@
 package nl.mihaly.main;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -12,6 +16,8 @@ import java.util.function.Consumer;
  */
 public class CodingAIAgent {
 
+    private static final int EDIT_MODE_MIN_LINES = 150;
+
     private final Consumer<String> logger;
     private final String specification;
     private final String className;
@@ -21,34 +27,126 @@ public class CodingAIAgent {
     private final OllamaClient ollama;
     private final JavaCodeExtractor extractor;
     private final ClassWriter writer;
+    private final PatchApplier patcher;
+    private final CompileErrorFixer fastFixer;
     private final PomFixer pomFixer;
     private final TestSourceLoader testSourceLoader;
+    private final SolutionLibrary library;
+    private final ModelPolicy policy;
+    private final RouteStats routeStats = RouteStats.shared();
+    private final boolean pipelined;
+    private final boolean structured;
+    private final CancellationToken token;
+    private final ModelScheduler.Job job;
+    private final GenerationBudget budget;
+    private final PerformanceLint lint;
+
+    private TestResultMemo memo;
+    private CandidateSnapshots snapshots;
+    private Path originalRoot;
+    private Path classFile;
+    private String examples = "";
+    private final AtomicBoolean examplesPending = new AtomicBoolean();
+    private int iterationsUsed;
+    private RunJournal journal;
+    private RunJournal.Entry resumeEntry;
+    private int cycle;
+    private volatile String lastPromptHash;
+    private String candidatePromptHash;
 
     public CodingAIAgent(Consumer<String> logger,
                          String specification,
                          String className,
                          String packageName) {
+        this(logger, specification, className, packageName, new CancellationToken());
+    }
+
+    /**
+     * Creates an agent that stops, and releases its Ollama request and Maven
+     * process, as soon as the token is cancelled or its deadline passes.
+     */
+    public CodingAIAgent(Consumer<String> logger,
+                         String specification,
+                         String className,
+                         String packageName,
+                         CancellationToken token) {
 
         this.logger = logger;
         this.specification = specification;
         this.className = className;
         this.packageName = packageName;
+        this.token = token;
 
-        this.maven = new MavenRunner(logger);
-        this.ollama = new OllamaClient(logger);
+        this.job = ModelScheduler.shared(logger).newJob(className);
+
+        this.maven = new MavenRunner(logger, token);
+        this.ollama = new OllamaClient(logger, token, job);
         this.extractor = new JavaCodeExtractor(logger);
         this.writer = new ClassWriter(logger);
+        this.patcher = new PatchApplier(logger);
+        this.fastFixer = new CompileErrorFixer(logger, packageName, className);
         this.testSourceLoader = new TestSourceLoader(logger, packageName, className);
-        this.pomFixer = new PomFixer(logger, extractor, packageName, className);
+        this.pomFixer = new PomFixer(logger, extractor, packageName, className, token, job);
+        this.library = SolutionLibrary.shared(logger);
+        this.policy = ModelPolicy.fromSettings(logger);
+        this.pipelined = Settings.getBoolean("agent.pipeline", true);
+        this.structured = Settings.getBoolean("generation.structured", true);
+        this.budget = GenerationBudget.shared(logger);
+        this.lint = new PerformanceLint(logger);
     }
 
     /**
      * Runs two full TDD cycles. Each cycle may contain up to 30 iterations.
+     * Returns true if the tests went green.
+     *
+     * The loop runs in a scratch copy of the project (see ScratchProject); only
+     * the final class, and pom.xml if it was fixed, are copied back.
+     */
+    public boolean runFullProcess(Path projectRoot) {
+        if (!Settings.getBoolean("workspace.scratch", true)) {
+            return runInWorkspace(projectRoot, projectRoot);
+        }
+
+        ScratchProject scratch;
+        try {
+            scratch = ScratchProject.create(projectRoot, logger);
+        } catch (IOException e) {
+            logger.accept("Cannot create scratch copy, working in the project itself: " + e.getMessage());
+            return runInWorkspace(projectRoot, projectRoot);
+        }
+
+        try (scratch) {
+            boolean green = runInWorkspace(scratch.root(), projectRoot);
+
+            if (classFile != null) {
+                scratch.syncBackIfChanged(classFile);
+            }
+            scratch.syncBackIfChanged(Path.of("pom.xml"));
+            return green;
+        } catch (IOException e) {
+            logger.accept("Failed to copy the result back to " + projectRoot + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Runs the TDD cycles in the given workspace. The original project root is
+     * used for state that must survive the workspace, such as memoized results.
+     * When the tests do not go green, the best candidate is left in the workspace.
      */
-    public void runFullProcess(Path projectRoot) {
+    public boolean runInWorkspace(Path projectRoot, Path originalRoot) {
         long start = System.currentTimeMillis();
+        this.originalRoot = originalRoot;
+        this.snapshots = new CandidateSnapshots();
+        AgentEvents.runStarted(className);
 
-        for (int cycle = 1; cycle <= 2; cycle++) {
+        String testSource = testSourceLoader.loadTestSource(projectRoot);
+        prepareExamples(testSource);
+
+        journal = RunJournal.open(originalRoot, packageName, className, specification, testSource, logger);
+        int firstCycle = resumeFromJournal(projectRoot);
+
+        for (cycle = firstCycle; cycle <= 2; cycle++) {
             logger.accept("=== Starting TDD cycle " + cycle + " ===");
 
             boolean success = runTddLoop(projectRoot);
@@ -61,26 +159,206 @@ public class CodingAIAgent {
 
                 logger.accept("All tests green in " + duration + " ms");
 
-                return;
+                String solution = currentSource(projectRoot);
+                if (solution != null) {
+                    library.add(className, specification, testSource, solution);
+                }
+                logger.accept(library.recordRun(!examples.isEmpty(), iterationsUsed));
+
+                journal.recordFinished(true);
+                return true;
+            }
+
+            if (token.isCancelled()) {
+                logger.accept("Run cancelled: " + token.reason());
+                break;
             }
 
             logger.accept("Cycle " + cycle + " did not fully succeed.");
         }
 
-        logger.accept("Both cycles completed. Tests still not green.");
+        if (token.isCancelled()) {
+            // Left unfinished on purpose, so the next run resumes here.
+            journal.close();
+        } else {
+            logger.accept("Both cycles completed. Tests still not green.");
+            journal.recordFinished(false);
+        }
+
+        CandidateSnapshots.Snapshot best = snapshots.best();
+        if (best != null) {
+            logger.accept("Keeping best candidate from iteration " + best.iteration + " (" + best.result.summary() + ").");
+            restore(projectRoot, best.source);
+        }
+        return false;
+    }
+
+    /**
+     * Restores the best candidate and the loop state of an unfinished earlier
+     * run of the same task from its journal. Returns the cycle to start with.
+     */
+    private int resumeFromJournal(Path projectRoot) {
+        if (!Settings.getBoolean("journal.resume", true)) {
+            journal.reset();
+            return 1;
+        }
+
+        List<RunJournal.Entry> entries = journal.unfinishedEntries();
+        if (entries.isEmpty()) return 1;
+
+        for (RunJournal.Entry entry : entries) {
+            snapshots.record(entry.iteration, entry.source, entry.result);
+        }
+        CandidateSnapshots.Snapshot best = snapshots.best();
+        restore(projectRoot, best.source);
+
+        RunJournal.Entry last = entries.get(entries.size() - 1);
+        resumeEntry = last;
+        iterationsUsed = entries.size();
+
+        logger.accept("Resuming unfinished run at cycle " + last.cycle + ", iteration " + (last.iteration + 1)
+                + ", from the best candidate of iteration " + best.iteration + " (" + best.result.summary() + ").");
+        return last.cycle;
+    }
+
+    /**
+     * Looks up earlier green solutions similar to this specification and tests,
+     * to be included as examples in the first prompt.
+     */
+    private void prepareExamples(String testSource) {
+        int k = Settings.getInt("retrieval.examples", 2);
+        List<SolutionLibrary.Match> matches = library.search(specification, testSource, k);
+
+        if (matches.isEmpty()) {
+            logger.accept("No similar green solutions found in library.");
+            examples = "";
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (SolutionLibrary.Match m : matches) {
+            logger.accept(String.format("Retrieved example %s (score %.1f)", m.className, m.score));
+            sb.append(Texts.EXAMPLE.formatted(m.className, m.specification, m.solution));
+        }
+        examples = Texts.EXAMPLES.formatted(sb.toString());
+        examplesPending.set(true);
     }
 
     /**
      * Runs up to 30 iterations of the TDD loop using the main model.
      */
     public boolean runTddLoop(Path projectRoot) {
+        IterationPipeline pipeline = new IterationPipeline(logger);
+        memo = new TestResultMemo(logger, originalRoot != null ? originalRoot : projectRoot);
+        if (snapshots == null) {
+            snapshots = new CandidateSnapshots();
+        }
+        try {
+            return runTddLoop(projectRoot, pipeline);
+        } finally {
+            pipeline.report();
+            logger.accept("Test result " + memo.stats());
+            logger.accept("Model routes:");
+            routeStats.describe().forEach(logger);
+            logger.accept("Code extraction:");
+            ExtractionStats.shared().describe().forEach(logger);
+            logger.accept("Generation budgets:");
+            budget.describe().forEach(logger);
+            logger.accept("Model scheduler:");
+            ModelScheduler.shared(logger).describe().forEach(logger);
+            BuildWorkerPool pool = BuildWorkerPool.shared(logger);
+            if (pool != null) logger.accept(pool.describe());
+            CdsArchives.shared(logger).describe().forEach(logger);
+        }
+    }
+
+    private boolean runTddLoop(Path projectRoot, IterationPipeline pipeline) {
         String lastTestOutput = "";
         String testSource = testSourceLoader.loadTestSource(projectRoot);
+        boolean candidateWritten = false;
+        String memoizedOutput = null;
+
+        int stagnant = 0;
+        String lastSignature = null;
+        int lastFailureCount = Integer.MAX_VALUE;
+        ModelPolicy.Choice lastChoice = null;
+        ModelPolicy.Choice speculationChoice = null;
+        String greenSource = null;
+        int performanceFixes = 0;
+
+        int firstIteration = 1;
+        if (resumeEntry != null) {
+            // The best candidate is already restored and its output known: no need to build it again.
+            firstIteration = resumeEntry.iteration + 1;
+            stagnant = resumeEntry.stagnant;
+            lastSignature = IterationPipeline.failureSignature(resumeEntry.result.output);
+            lastFailureCount = resumeEntry.result.failureCount();
+            lastTestOutput = snapshots.best().result.output;
+            memoizedOutput = lastTestOutput;
+            resumeEntry = null;
+        }
 
-        for (int iteration = 1; iteration <= 30; iteration++) {
+        for (int iteration = firstIteration; iteration <= 30; iteration++) {
+            if (token.isCancelled()) {
+                pipeline.cancel();
+                return false;
+            }
             logger.accept("=== Iteration " + iteration + " ===");
+            iterationsUsed++;
+
+            // While the new candidate is tested, request the next one with the
+            // failures we know so far. It is only used if the failures stay the same.
+            if (pipelined && candidateWritten) {
+                String knownOutput = lastTestOutput;
+                String candidateSource = currentSource(projectRoot);
+                ModelPolicy.Choice choice = policy.choose(TestResult.parse(knownOutput), stagnant);
+                speculationChoice = choice;
+                pipeline.speculate(knownOutput, () -> generateCandidate(choice, candidateSource, testSource,
+                        lint.annotate(candidateSource, knownOutput)));
+            }
+            candidateWritten = false;
+
+            boolean memoized = memoizedOutput != null;
+            if (memoized) {
+                lastTestOutput = memoizedOutput;
+                memoizedOutput = null;
+            } else {
+                lastTestOutput = runAndRecord(projectRoot, testSource, pipeline);
+
+                // Trivial compile errors (missing imports, wrong class name) are fixed
+                // without a model call, then the build is re-run right away.
+                for (int fix = 0; fix < 3 && !maven.testsGreen(lastTestOutput)
+                        && fastFixer.fixCompileErrors(projectRoot, lastTestOutput); fix++) {
+                    logger.accept("Fast fixes applied. Re-running tests...");
+                    lastTestOutput = runAndRecord(projectRoot, testSource, pipeline);
+                }
+            }
 
-            lastTestOutput = maven.runTests(projectRoot);
+            TestResult result = TestResult.parse(lastTestOutput);
+            AgentEvents.iterationFinished(iteration, result);
+            // Compile errors say nothing about how close the tests are to green.
+            job.setFailing(result.compilationError || result.dependencyError ? -1 : result.failureCount());
+
+            String signature = IterationPipeline.failureSignature(lastTestOutput);
+            stagnant = signature.equals(lastSignature) ? stagnant + 1 : 0;
+            lastSignature = signature;
+
+            if (!memoized && journal != null) {
+                journal.recordCandidate(cycle, iteration, stagnant, lastChoice == null ? null : lastChoice.model,
+                        candidatePromptHash, currentSource(projectRoot), result);
+            }
+
+            if (lastChoice != null) {
+                routeStats.recordOutcome(lastChoice, result.failureCount() < lastFailureCount);
+                lastChoice = null;
+            }
+            lastFailureCount = result.failureCount();
+
+            if (greenSource != null && !maven.testsGreen(lastTestOutput)) {
+                logger.accept("Performance fix broke the tests (" + result.summary() + "); restoring the green class.");
+                restore(projectRoot, greenSource);
+                return true;
+            }
 
             // ------------------------------------------------------------
             // NEW LOGIC: Only fix POM if the class already exists AND
@@ -88,6 +366,7 @@ public class CodingAIAgent {
             // ------------------------------------------------------------
             if (pomFixer.needsPomFix(projectRoot, lastTestOutput)) {
                 logger.accept("Dependency resolution errors detected. Attempting to fix pom.xml...");
+                pipeline.cancel();
 
                 if (pomFixer.fixPom(projectRoot, lastTestOutput)) {
                     logger.accept("pom.xml updated. Re-running tests...");
@@ -98,29 +377,80 @@ public class CodingAIAgent {
             }
 
             if (maven.testsGreen(lastTestOutput)) {
-                logger.accept("All tests green!");
-                return true;
+                pipeline.cancel();
+                String source = currentSource(projectRoot);
+                List<PerformanceLint.Finding> findings = lint.check(source);
+                if (findings.isEmpty()) {
+                    logger.accept("All tests green!");
+                    return true;
+                }
+                if (lint.mode() != PerformanceLint.Mode.FIX || performanceFixes >= lint.maxFixRounds() || iteration == 30) {
+                    logger.accept("All tests green, with " + findings.size() + " performance findings:");
+                    findings.forEach(f -> logger.accept("  " + f));
+                    return true;
+                }
+
+                // The green class is kept; the fix is only accepted if the tests stay green.
+                performanceFixes++;
+                greenSource = source;
+                logger.accept("All tests green, but the performance findings must be fixed first (round "
+                        + performanceFixes + " of " + lint.maxFixRounds() + "):");
+                findings.forEach(f -> logger.accept("  " + f));
+
+                ModelPolicy.Choice choice = policy.choose(result, 0);
+                String fixRequest = lint.fixRequest(findings, lastTestOutput);
+                String javaSource = pipeline.timeGenerate(() -> generateCandidate(choice, source, testSource, fixRequest));
+                if (javaSource == null || token.isCancelled()) {
+                    logger.accept("No performance fix received; keeping the green class.");
+                    return !token.isCancelled();
+                }
+                write(projectRoot, javaSource);
+                candidatePromptHash = lastPromptHash;
+                logger.accept("Performance fix written. Re-running tests...");
+                continue;
+            }
+
+            if (!memoized) {
+                snapshots.record(iteration, currentSource(projectRoot), result);
+            }
+
+            // Never build on a candidate that is worse than the best one so far.
+            CandidateSnapshots.Snapshot best = snapshots.best();
+            if (best != null && best.result.failureCount() < result.failureCount()) {
+                logger.accept("Candidate is worse (" + result.summary() + ") than iteration "
+                        + best.iteration + " (" + best.result.summary() + "). Rolling back.");
+                restore(projectRoot, best.source);
+                lastTestOutput = best.result.output;
+                result = best.result;
+                // The speculation was built on the rejected candidate; the next one must start from the best.
+                pipeline.cancel();
+                speculationChoice = null;
             }
 
             logger.accept("Test failures detected:");
             logger.accept(lastTestOutput);
 
-            String prompt = Texts.PROMPT.formatted(
-                    className,
-                    packageName == null ? "" : packageName,
-                    specification,
-                    testSource,
-                    lastTestOutput
-            );
+            String javaSource = pipeline.take(lastTestOutput);
+            lastChoice = speculationChoice;
 
-            logger.accept("Prompt sent to model:");
-            logger.accept(prompt);
+            if (javaSource == null) {
+                ModelPolicy.Choice choice = policy.choose(result, stagnant);
+                logger.accept("Model route: " + choice + " (" + FailureClass.classify(result)
+                        + ", stagnant for " + stagnant + " iterations)");
+
+                String failureOutput = lastTestOutput;
+                String currentSource = currentSource(projectRoot);
+                javaSource = pipeline.timeGenerate(() -> generateCandidate(choice, currentSource, testSource,
+                        lint.annotate(currentSource, failureOutput)));
+                lastChoice = choice;
+            }
+            speculationChoice = null;
 
-            String aiResponse = ollama.call("deepseek-coder-v2:16b", prompt);
-            logger.accept("AI response:");
-            logger.accept(aiResponse);
+            if (token.isCancelled()) {
+                pipeline.cancel();
+                return false;
+            }
 
-            String javaSource = extractor.extract(aiResponse);
             if (javaSource == null) {
                 logger.accept("No valid Java code found.");
                 continue;
@@ -129,40 +459,216 @@ public class CodingAIAgent {
             logger.accept("Extracted Java class:");
             logger.accept(javaSource);
 
-            writer.write(className, packageName, javaSource, projectRoot);
+            List<PerformanceLint.Finding> findings = lint.check(javaSource);
+            if (!findings.isEmpty()) {
+                logger.accept("Performance findings:");
+                findings.forEach(f -> logger.accept("  " + f));
+            }
+
+            write(projectRoot, javaSource);
+            candidatePromptHash = lastPromptHash;
+
+            TestResult known = memo.lookup(memo.key(currentSource(projectRoot), testSource, projectRoot));
+            if (known != null && !known.green) {
+                // Same candidate, tests and dependencies as before: the build would fail the same way.
+                logger.accept("This exact candidate was already tried (" + known.summary()
+                        + "). Skipping the build and re-prompting.");
+                memoizedOutput = Texts.ALREADY_TRIED + known.output;
+                continue;
+            }
+
+            candidateWritten = true;
             logger.accept("Class written. Re-running tests...");
         }
 
         logger.accept("Primary model stuck after 30 iterations.");
-        logger.accept("Switching to deepseek-r1-70b for final attempt...");
+        logger.accept("Switching to " + policy.fallback().model + " for final attempt...");
 
         return runFallbackModel(projectRoot, lastTestOutput, testSource);
     }
 
-    private boolean runFallbackModel(Path projectRoot, String testOutput, String testSource) {
-        String prompt = Texts.FALLBACKPROMPT.formatted(
+    /**
+     * Runs the tests and records the result for the current class source,
+     * unless the build failed for reasons unrelated to the candidate.
+     */
+    private String runAndRecord(Path projectRoot, String testSource, IterationPipeline pipeline) {
+        String output = pipeline.timeTest(() -> maven.runTests(projectRoot, packageName, className));
+
+        TestResult result = TestResult.parse(output);
+        boolean conclusive = output.contains("BUILD SUCCESS") || output.contains("BUILD FAILURE");
+        String source = currentSource(projectRoot);
+
+        if (conclusive && !result.dependencyError && source != null) {
+            memo.record(memo.key(source, testSource, projectRoot), output);
+        }
+        return output;
+    }
+
+    private void write(Path projectRoot, String javaSource) {
+        Path written = writer.write(className, packageName, javaSource, projectRoot);
+        if (written != null) {
+            ProjectIndex.forProject(projectRoot, logger).refresh(written);
+            classFile = projectRoot.toAbsolutePath().normalize().relativize(written.toAbsolutePath().normalize());
+        }
+    }
+
+    private void restore(Path projectRoot, String source) {
+        write(projectRoot, source);
+    }
+
+    private String currentSource(Path projectRoot) {
+        return ProjectIndex.forProject(projectRoot, logger).mainSource(packageName, className);
+    }
+
+    /**
+     * Asks the model for the next candidate: an edit for large existing classes,
+     * with a full rewrite as fallback. Returns the normalized source, or null.
+     * Does not touch the project, so it can run while a build is in progress.
+     */
+    private String generateCandidate(ModelPolicy.Choice choice, String currentSource,
+                                     String testSource, String testOutput) {
+        String javaSource = null;
+        if (useEditMode(currentSource)) {
+            javaSource = requestEdit(choice, currentSource, testSource, testOutput);
+            if (javaSource == null) {
+                logger.accept("Edit did not apply. Falling back to full rewrite...");
+            }
+        }
+
+        if (javaSource == null) {
+            javaSource = requestFullClass(choice, currentSource, testSource, testOutput);
+        }
+
+        return javaSource == null ? null : fastFixer.normalize(javaSource);
+    }
+
+    /**
+     * Edit mode is used for existing classes of at least EDIT_MODE_MIN_LINES lines,
+     * where a full rewrite would mostly reproduce unchanged code.
+     */
+    private boolean useEditMode(String currentSource) {
+        return currentSource != null
+                && currentSource.lines().count() >= EDIT_MODE_MIN_LINES;
+    }
+
+    /**
+     * Asks the model for a diff or method replacements and applies them to the
+     * current source. Returns null if the edit is missing or conflicts.
+     */
+    private String requestEdit(ModelPolicy.Choice choice, String currentSource,
+                               String testSource, String testOutput) {
+        String prompt = Texts.EDIT_PROMPT.formatted(
                 className,
                 packageName == null ? "" : packageName,
                 specification,
                 testSource,
+                currentSource,
                 testOutput
         );
 
-        String aiResponse = ollama.call("deepseek-r1:70b", prompt);
+        logger.accept("Edit prompt sent to model:");
+        logger.accept(prompt);
+
+        String aiResponse = callModel(choice, prompt,
+                budget.options(choice.model, prompt, currentSource.length(), choice.options, GenerationBudget.Output.EDIT));
+        logger.accept("AI response:");
+        logger.accept(aiResponse);
+
+        // The model sometimes ignores the instruction and returns the full class anyway.
+        String fullClass = extractor.extract(aiResponse);
+        if (fullClass != null && fullClass.contains("class " + className)) {
+            logger.accept("Model returned a full class instead of an edit.");
+            return fullClass;
+        }
+
+        return patcher.apply(currentSource, aiResponse);
+    }
+
+    private String requestFullClass(ModelPolicy.Choice choice, String currentSource,
+                                    String testSource, String testOutput) {
+        String prompt = Texts.PROMPT.formatted(
+                className,
+                packageName == null ? "" : packageName,
+                specification,
+                testSource,
+                testOutput
+        );
+
+        // Earlier green solutions are only shown once, in the first prompt of the run.
+        if (examplesPending.getAndSet(false)) {
+            prompt = examples + prompt;
+        }
+
+        logger.accept("Prompt sent to model:");
+        logger.accept(prompt);
+
+        return generateClass(choice, prompt, currentSource == null ? 0 : currentSource.length());
+    }
+
+    /**
+     * Asks for a full class. With generation.structured the model must answer
+     * with a JSON document (see JavaCodeExtractor.SCHEMA); if that fails, the
+     * prompt is sent again as plain text and the code is extracted from it.
+     * The generation budget follows the size of the current class.
+     */
+    private String generateClass(ModelPolicy.Choice choice, String prompt, int classChars) {
+        lastPromptHash = ProjectIndex.sha256(prompt);
+        if (structured) {
+            String structuredPrompt = prompt + Texts.STRUCTURED_OUTPUT;
+            long start = System.currentTimeMillis();
+            String json = ollama.callStructured(choice.model, structuredPrompt,
+                    budget.options(choice.model, structuredPrompt, classChars, choice.options,
+                            GenerationBudget.Output.JSON_CLASS),
+                    JavaCodeExtractor.SCHEMA);
+            routeStats.recordLatency(choice, System.currentTimeMillis() - start);
+
+            String javaSource = extractor.extractStructured(json, choice.model);
+            if (javaSource != null || token.isCancelled()) return javaSource;
+            logger.accept("Structured response unusable, retrying without schema.");
+        }
 
-        logger.accept("Fallback model response:");
+        String aiResponse = callModel(choice, prompt,
+                budget.options(choice.model, prompt, classChars, choice.options, GenerationBudget.Output.JAVA_CLASS));
+        logger.accept("AI response:");
         logger.accept(aiResponse);
 
-        String javaSource = extractor.extract(aiResponse);
+        return extractor.extract(aiResponse, choice.model);
+    }
+
+    private String callModel(ModelPolicy.Choice choice, String prompt, Map<String, Object> options) {
+        lastPromptHash = ProjectIndex.sha256(prompt);
+        long start = System.currentTimeMillis();
+        String response = ollama.call(choice.model, prompt, options);
+        routeStats.recordLatency(choice, System.currentTimeMillis() - start);
+        return response;
+    }
+
+    private boolean runFallbackModel(Path projectRoot, String testOutput, String testSource) {
+        if (token.isCancelled()) return false;
+
+        String prompt = Texts.FALLBACKPROMPT.formatted(
+                className,
+                packageName == null ? "" : packageName,
+                specification,
+                testSource,
+                testOutput
+        );
+
+        String current = currentSource(projectRoot);
+        String javaSource = generateClass(policy.fallback(), prompt, current == null ? 0 : current.length());
         if (javaSource != null) {
-            writer.write(className, packageName, javaSource, projectRoot);
+            javaSource = fastFixer.normalize(javaSource);
+            write(projectRoot, javaSource);
             logger.accept("Fallback model wrote a full class. Re-running tests...");
 
-            String result = maven.runTests(projectRoot);
-            return maven.testsGreen(result);
+            String result = maven.runTests(projectRoot, packageName, className);
+            boolean green = maven.testsGreen(result);
+            routeStats.recordOutcome(policy.fallback(), green);
+            return green;
         }
 
         logger.accept("Fallback model did not return valid Java code.");
+        routeStats.recordOutcome(policy.fallback(), false);
         return false;
     }
 }
@@ -3,12 +3,14 @@ package nl.mihaly.main;
 import javax.swing.*;
 import java.awt.*;
 import java.nio.file.Path;
+import java.time.Duration;
 
 /**
  * Provides a Swing-based graphical interface for the AI TDD agent.
  *
  * Allows the user to select a project root, enter class details,
- * start the TDD loop, and view real-time log output.
+ * start the TDD loop, stop it, and view real-time log output next to a
+ * dashboard with iteration and latency charts.
  */
 public class CodingAIGui extends JFrame {
 
@@ -18,12 +20,15 @@ public class CodingAIGui extends JFrame {
     private final JTextField classNameField = new JTextField(30);
     private final JTextArea specArea = new JTextArea(5, 40);
     private final JTextArea logArea = new JTextArea();
+    private final DashboardPanel dashboard = new DashboardPanel();
 
     private Path projectRoot = Path.of("C:\\temp\\IdeaProjects");
 
     private final CacheManager cache;
     private final GuiOrganizer organizer = new GuiOrganizer();
 
+    private volatile CancellationToken running;
+
     public CodingAIGui() {
         super("CodingAI TDD Agent");
 
@@ -33,7 +38,7 @@ public class CodingAIGui extends JFrame {
 
         buildUiUsingOrganizer();
 
-        setSize(800, 700);
+        setSize(1100, 750);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
@@ -46,8 +51,10 @@ public class CodingAIGui extends JFrame {
         JPanel classPanel = organizer.createClassPanel(classNameField);
         JScrollPane specScroll = organizer.createSpecPanel(specArea);
         JScrollPane logScroll = organizer.createLogPanel(logArea);
+        JSplitPane logAndDashboard = organizer.createLogAndDashboardPanel(logScroll, dashboard);
+        AgentEvents.subscribe(dashboard);
 
-        JPanel center = organizer.createCenterPanel(classPanel, specScroll, logScroll);
+        JPanel center = organizer.createCenterPanel(classPanel, specScroll, logAndDashboard);
         JPanel packagePanel = organizer.createPackagePanel(packageField);
         center.add(packagePanel, 0); // add package panel at top
 
@@ -70,15 +77,18 @@ public class CodingAIGui extends JFrame {
     private JPanel createButtonBar() {
         JButton chooseButton = new JButton("Choose project root");
         JButton startButton = new JButton("Start TDD-loop");
+        JButton stopButton = new JButton("Stop");
         JButton clearButton = new JButton("Clear");
 
         chooseButton.addActionListener(e -> chooseProjectRoot());
         startButton.addActionListener(e -> startAgent());
+        stopButton.addActionListener(e -> stopAgent());
         clearButton.addActionListener(e -> clearFields());
 
         JPanel bar = new JPanel();
         bar.add(chooseButton);
         bar.add(startButton);
+        bar.add(stopButton);
         bar.add(clearButton);
 
         return bar;
@@ -119,14 +129,42 @@ public class CodingAIGui extends JFrame {
             return;
         }
 
+        if (running != null) {
+            log("A TDD-loop is already running. Stop it first.");
+            return;
+        }
+
         cache.save(className, specification, packageName);
 
-        log("Starting TDD-loop...");
+        CancellationToken token = new CancellationToken();
+        Duration deadline = CancellationToken.parseDuration(Settings.get("agent.deadline", null));
+        if (deadline != null) {
+            token.setDeadline(deadline);
+            log("Starting TDD-loop with a deadline of " + deadline.toMinutes() + " min...");
+        } else {
+            log("Starting TDD-loop...");
+        }
+        running = token;
 
         new Thread(() -> {
-            CodingAIAgent agent = new CodingAIAgent(this::log, specification, className, packageName);
-            agent.runFullProcess(projectRoot);
-        }).start();
+            try {
+                CodingAIAgent agent = new CodingAIAgent(this::log, specification, className, packageName, token);
+                agent.runFullProcess(projectRoot);
+            } finally {
+                running = null;
+                if (token.isCancelled()) log("TDD-loop stopped: " + token.reason());
+            }
+        }, "tdd-agent").start();
+    }
+
+    private void stopAgent() {
+        CancellationToken token = running;
+        if (token == null) {
+            log("No TDD-loop is running.");
+            return;
+        }
+        log("Stopping TDD-loop...");
+        token.cancel("Stopped by user");
     }
 
     private void clearFields() {
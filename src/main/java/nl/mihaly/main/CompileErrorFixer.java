@@ -0,0 +1,276 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rule-based repairs for trivial mistakes, so they do not cost a model call.
+ *
+ * Before a candidate is written, the package declaration and the name of the
+ * top-level class are forced to the requested ones. After a failed build, "cannot find
+ * symbol" errors for classes in the target class are fixed by adding imports
+ * resolved through SymbolIndex.
+ */
+public class CompileErrorFixer {
+
+    private static final Pattern ERROR_LINE =
+            Pattern.compile("^\\[ERROR]\\s+(.+?\\.java):\\[(\\d+),(\\d+)]\\s+(.*)$");
+
+    private static final Pattern SYMBOL_LINE =
+            Pattern.compile("^\\s*symbol:\\s+(class|variable|interface|enum)\\s+(\\w+)");
+
+    private static final Pattern PACKAGE_DECL =
+            Pattern.compile("(?m)^\\s*package\\s+([\\w.]+)\\s*;");
+
+    private static final Pattern TYPE_DECL =
+            Pattern.compile("(?<![.@\\w])(?:class|interface|enum|record)\\s+(\\w+)");
+
+    private static final Pattern LAST_IMPORT_OR_PACKAGE =
+            Pattern.compile("(?m)^\\s*(?:import|package)\\s+[\\w.* \\t]+;[ \\t]*$");
+
+    private final Consumer<String> logger;
+    private final String packageName;
+    private final String className;
+
+    public CompileErrorFixer(Consumer<String> logger, String packageName, String className) {
+        this.logger = logger;
+        this.packageName = packageName == null ? "" : packageName;
+        this.className = className;
+    }
+
+    /**
+     * Forces the package declaration and the top-level type name to the requested
+     * values. Runs on every extracted candidate before it is written.
+     *
+     * Only the top-level type and the code referring to it are renamed; nested
+     * types, strings and comments are left alone.
+     */
+    public String normalize(String javaSource) {
+        String result = javaSource;
+
+        Matcher pkg = PACKAGE_DECL.matcher(result);
+        if (!packageName.isBlank() && pkg.find() && !pkg.group(1).equals(packageName)) {
+            logger.accept("Fast fix: package " + pkg.group(1) + " -> " + packageName);
+            result = result.substring(0, pkg.start(1)) + packageName + result.substring(pkg.end(1));
+        }
+
+        String code = maskLiterals(result);
+        MatchResult type = topLevelType(code);
+        if (type != null && !type.group(1).equals(className)) {
+            logger.accept("Fast fix: class name " + type.group(1) + " -> " + className);
+            result = renameType(result, code, type);
+        }
+
+        return result;
+    }
+
+    /**
+     * The declaration of the public top-level type, or of the first top-level
+     * type if none is public.
+     */
+    private static MatchResult topLevelType(String code) {
+        Matcher m = TYPE_DECL.matcher(code);
+        MatchResult first = null;
+        int depth = 0;
+        int pos = 0;
+
+        while (m.find()) {
+            depth += depthChange(code, pos, m.start());
+            pos = m.start();
+            if (depth != 0) continue;
+
+            int declStart = Math.max(code.lastIndexOf(';', m.start()), code.lastIndexOf('}', m.start())) + 1;
+            if (code.substring(declStart, m.start()).matches("(?s).*\\bpublic\\b.*")) return m.toMatchResult();
+            if (first == null) first = m.toMatchResult();
+        }
+        return first;
+    }
+
+    /**
+     * Renames the declared type, its constructors and the other references to it
+     * in code. Positions are found in the masked code and applied to the source.
+     */
+    private String renameType(String source, String code, MatchResult type) {
+        String wrong = type.group(1);
+        List<Integer> positions = new ArrayList<>();
+
+        // A nested type cannot have the name of its enclosing type, so every
+        // unqualified use of the name in code refers to the top-level type.
+        Matcher use = Pattern.compile("(?<![.\\w])" + Pattern.quote(wrong) + "\\b").matcher(code);
+        while (use.find()) {
+            positions.add(use.start());
+        }
+
+        StringBuilder sb = new StringBuilder(source);
+        for (int i = positions.size() - 1; i >= 0; i--) {
+            sb.replace(positions.get(i), positions.get(i) + wrong.length(), className);
+        }
+        return sb.toString();
+    }
+
+    private static int depthChange(String code, int from, int to) {
+        int change = 0;
+        for (int i = from; i < to; i++) {
+            char c = code.charAt(i);
+            if (c == '{') change++;
+            else if (c == '}') change--;
+        }
+        return change;
+    }
+
+    /**
+     * The source with comments and string, text block and char literals replaced
+     * by spaces, keeping every other character at its position.
+     */
+    static String maskLiterals(String source) {
+        StringBuilder sb = new StringBuilder(source);
+        int i = 0;
+        while (i < source.length()) {
+            int end;
+            if (source.startsWith("//", i)) {
+                end = source.indexOf('\n', i);
+                if (end < 0) end = source.length();
+            } else if (source.startsWith("/*", i)) {
+                end = source.indexOf("*/", i + 2);
+                end = end < 0 ? source.length() : end + 2;
+            } else if (source.startsWith("\"\"\"", i)) {
+                end = source.indexOf("\"\"\"", i + 3);
+                while (end > 0 && source.charAt(end - 1) == '\\') end = source.indexOf("\"\"\"", end + 1);
+                end = end < 0 ? source.length() : end + 3;
+            } else if (source.charAt(i) == '"' || source.charAt(i) == '\'') {
+                char quote = source.charAt(i);
+                end = i + 1;
+                while (end < source.length() && source.charAt(end) != quote && source.charAt(end) != '\n') {
+                    if (source.charAt(end) == '\\') end++;
+                    end++;
+                }
+                end = Math.min(source.length(), end + 1);
+            } else {
+                i++;
+                continue;
+            }
+            for (int j = i; j < end; j++) {
+                if (sb.charAt(j) != '\n') sb.setCharAt(j, ' ');
+            }
+            i = end;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Tries to fix the compile errors of the target class in the Maven output.
+     * Returns true if the class file was changed and the build should be re-run.
+     */
+    public boolean fixCompileErrors(Path projectRoot, String mavenOutput) {
+        Path classFile = projectRoot.resolve("src/main/java")
+                .resolve(packageName.replace('.', '/'))
+                .resolve(className + ".java");
+
+        if (!Files.exists(classFile)) return false;
+
+        Set<String> missing = missingSymbols(mavenOutput);
+        boolean wrongFileName = mavenOutput.contains("should be declared in a file named " + className + ".java");
+
+        if (missing.isEmpty() && !wrongFileName) return false;
+
+        long start = System.currentTimeMillis();
+
+        try {
+            String source = Files.readString(classFile, StandardCharsets.UTF_8);
+            String fixed = normalize(source);
+
+            if (!missing.isEmpty()) {
+                ProjectIndex project = ProjectIndex.forProject(projectRoot, logger);
+                SymbolIndex symbols = new SymbolIndex(project, logger);
+
+                for (String symbol : missing) {
+                    String fqcn = symbols.resolve(symbol);
+                    if (fqcn == null) {
+                        logger.accept("Fast fix: cannot resolve symbol " + symbol);
+                        continue;
+                    }
+                    fixed = addImport(fixed, fqcn);
+                }
+            }
+
+            if (fixed.equals(source)) return false;
+
+            Files.writeString(classFile, fixed, StandardCharsets.UTF_8);
+            ProjectIndex.forProject(projectRoot, logger).refresh(classFile);
+
+            logger.accept("Fast fixes applied in " + (System.currentTimeMillis() - start) + " ms.");
+            return true;
+
+        } catch (IOException e) {
+            logger.accept("Fast fix failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Collects class-like symbols from "cannot find symbol" errors in the target class.
+     */
+    Set<String> missingSymbols(String mavenOutput) {
+        Set<String> result = new LinkedHashSet<>();
+        String[] lines = mavenOutput.split("\n");
+
+        for (int i = 0; i < lines.length; i++) {
+            Matcher error = ERROR_LINE.matcher(lines[i].trim());
+            if (!error.matches()) continue;
+
+            String file = error.group(1).trim();
+            String fileName = file.substring(Math.max(file.lastIndexOf('/'), file.lastIndexOf('\\')) + 1);
+            if (!fileName.equals(className + ".java")) continue;
+            if (!error.group(4).contains("cannot find symbol")) continue;
+
+            for (int j = i + 1; j < Math.min(lines.length, i + 4); j++) {
+                Matcher symbol = SYMBOL_LINE.matcher(lines[j]);
+                if (symbol.find()) {
+                    String name = symbol.group(2);
+                    // Variables starting with an upper case letter are usually classes (Collectors.toList()).
+                    if (Character.isUpperCase(name.charAt(0))) {
+                        result.add(name);
+                    }
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private String addImport(String source, String fqcn) {
+        String simple = fqcn.substring(fqcn.lastIndexOf('.') + 1);
+        String pkg = fqcn.substring(0, fqcn.lastIndexOf('.'));
+
+        if (pkg.equals(packageName) || pkg.equals("java.lang")) return source;
+        if (Pattern.compile("(?m)^\\s*import\\s+[\\w.]+\\." + Pattern.quote(simple) + "\\s*;").matcher(source).find()) {
+            return source;
+        }
+
+        logger.accept("Fast fix: import " + fqcn);
+
+        String line = "import " + fqcn + ";";
+        Matcher m = LAST_IMPORT_OR_PACKAGE.matcher(source);
+        int insertAt = -1;
+        boolean afterPackage = false;
+        while (m.find()) {
+            insertAt = m.end();
+            afterPackage = m.group().trim().startsWith("package");
+        }
+
+        if (insertAt < 0) {
+            return line + "\n" + source;
+        }
+        return source.substring(0, insertAt) + (afterPackage ? "\n\n" : "\n") + line + source.substring(insertAt);
+    }
+}
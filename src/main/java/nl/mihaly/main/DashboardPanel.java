@@ -0,0 +1,277 @@
+package nl.mihaly.main;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Live view of a run: current model, token throughput, cache hit rates, the
+ * model scheduler's queue, and
+ * per iteration the number of failing tests and the Maven and model latency.
+ *
+ * Fed by AgentEvents. Events only update counters; painting happens on the
+ * Swing thread, at most once per second plus whatever repaints Swing coalesces.
+ */
+public class DashboardPanel extends JPanel implements AgentEvents.Listener {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_ITERATIONS = 60;
+    private static final long STALL_SECONDS = 120;
+
+    private static final Color FAILING = new Color(200, 60, 60);
+    private static final Color COMPILE = new Color(230, 150, 40);
+    private static final Color GREEN = new Color(60, 160, 80);
+    private static final Color MAVEN = new Color(70, 110, 200);
+    private static final Color MODEL = new Color(140, 80, 180);
+
+    private final List<Iteration> iterations = new ArrayList<>();
+    private final Map<String, int[]> caches = new TreeMap<>();
+
+    private String className = "-";
+    private String currentModel = "-";
+    private boolean modelBusy;
+    private long pendingMavenMillis;
+    private long pendingModelMillis;
+    private long lastPromptTokens = -1;
+    private long lastEvalTokens = -1;
+    private double lastTokensPerSecond = -1;
+    private long totalEvalTokens;
+    private long totalEvalNanos;
+    private long lastWaitMillis = -1;
+    private long maxWaitMillis;
+    private int queueDepth;
+    private long lastEvent = System.currentTimeMillis();
+
+    private static class Iteration {
+        final int number;
+        final int failing;
+        final boolean compileError;
+        final boolean green;
+        final long mavenMillis;
+        final long modelMillis;
+
+        Iteration(int number, int failing, boolean compileError, boolean green, long mavenMillis, long modelMillis) {
+            this.number = number;
+            this.failing = failing;
+            this.compileError = compileError;
+            this.green = green;
+            this.mavenMillis = mavenMillis;
+            this.modelMillis = modelMillis;
+        }
+    }
+
+    public DashboardPanel() {
+        setBorder(BorderFactory.createTitledBorder("Dashboard"));
+        setPreferredSize(new Dimension(420, 250));
+        setBackground(Color.WHITE);
+
+        // Keeps "last event" current, so a stalled loop is visible.
+        new Timer(1000, e -> repaint()).start();
+    }
+
+    // ------------------------------------------------------------
+    // EVENTS
+    // ------------------------------------------------------------
+
+    @Override
+    public synchronized void runStarted(String name) {
+        className = name;
+        iterations.clear();
+        caches.clear();
+        pendingMavenMillis = 0;
+        pendingModelMillis = 0;
+        totalEvalTokens = 0;
+        totalEvalNanos = 0;
+        lastWaitMillis = -1;
+        maxWaitMillis = 0;
+        touch();
+    }
+
+    @Override
+    public synchronized void modelStarted(String model) {
+        currentModel = model;
+        modelBusy = true;
+        touch();
+    }
+
+    @Override
+    public synchronized void modelScheduled(String model, long waitMillis, int depth) {
+        lastWaitMillis = waitMillis;
+        maxWaitMillis = Math.max(maxWaitMillis, waitMillis);
+        queueDepth = depth;
+        touch();
+    }
+
+    @Override
+    public synchronized void modelFinished(String model, long millis, long promptTokens, long evalTokens, long evalNanos) {
+        modelBusy = false;
+        pendingModelMillis += millis;
+        lastPromptTokens = promptTokens;
+        lastEvalTokens = evalTokens;
+        if (evalTokens > 0 && evalNanos > 0) {
+            lastTokensPerSecond = evalTokens * 1e9 / evalNanos;
+            totalEvalTokens += evalTokens;
+            totalEvalNanos += evalNanos;
+        }
+        touch();
+    }
+
+    @Override
+    public synchronized void mavenFinished(long millis) {
+        pendingMavenMillis += millis;
+        touch();
+    }
+
+    @Override
+    public synchronized void cacheLookup(String cache, boolean hit) {
+        int[] c = caches.computeIfAbsent(cache, k -> new int[2]);
+        if (hit) c[0]++;
+        c[1]++;
+        touch();
+    }
+
+    @Override
+    public synchronized void iterationFinished(int iteration, TestResult result) {
+        int failing = result.compilationError ? result.compileErrors : result.failures + result.errors;
+        iterations.add(new Iteration(iteration, failing, result.compilationError, result.green,
+                pendingMavenMillis, pendingModelMillis));
+        if (iterations.size() > MAX_ITERATIONS) iterations.remove(0);
+
+        pendingMavenMillis = 0;
+        pendingModelMillis = 0;
+        touch();
+    }
+
+    private void touch() {
+        lastEvent = System.currentTimeMillis();
+        repaint();
+    }
+
+    // ------------------------------------------------------------
+    // PAINTING
+    // ------------------------------------------------------------
+
+    @Override
+    protected synchronized void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        Insets in = getInsets();
+        int x = in.left + 8;
+        int width = getWidth() - in.left - in.right - 16;
+        int line = g2.getFontMetrics().getHeight();
+        int y = in.top + line;
+
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString("Class: " + className + "    Model: " + currentModel + (modelBusy ? " (generating)" : ""), x, y);
+        y += line;
+        g2.drawString(tokenLine(), x, y);
+        y += line;
+        g2.drawString(cacheLine(), x, y);
+        y += line;
+        g2.drawString(queueLine(), x, y);
+        y += line;
+
+        long idle = (System.currentTimeMillis() - lastEvent) / 1000;
+        g2.setColor(idle >= STALL_SECONDS ? FAILING : Color.DARK_GRAY);
+        g2.drawString("Last event " + idle + " s ago" + (idle >= STALL_SECONDS ? " - stalled?" : ""), x, y);
+        y += line / 2;
+
+        int chartHeight = Math.max(40, (getHeight() - in.bottom - y - 2 * line) / 2 - line);
+
+        y += line;
+        drawFailures(g2, x, y, width, chartHeight);
+        y += chartHeight + line + line / 2;
+        drawLatencies(g2, x, y, width, chartHeight);
+
+        g2.dispose();
+    }
+
+    private String tokenLine() {
+        String avg = totalEvalNanos > 0 ? String.format("%.1f", totalEvalTokens * 1e9 / totalEvalNanos) : "-";
+        String last = lastTokensPerSecond >= 0 ? String.format("%.1f", lastTokensPerSecond) : "-";
+        return "Tokens/s: last " + last + ", avg " + avg
+                + "    Tokens: prompt " + (lastPromptTokens < 0 ? "-" : lastPromptTokens)
+                + ", eval " + (lastEvalTokens < 0 ? "-" : lastEvalTokens);
+    }
+
+    private String queueLine() {
+        if (lastWaitMillis < 0) return "Model queue: -";
+        return "Model queue: " + queueDepth + " waiting, last wait " + lastWaitMillis + " ms, max " + maxWaitMillis + " ms";
+    }
+
+    private String cacheLine() {
+        if (caches.isEmpty()) return "Cache hits: -";
+        StringBuilder sb = new StringBuilder("Cache hits:");
+        for (Map.Entry<String, int[]> e : caches.entrySet()) {
+            int[] c = e.getValue();
+            sb.append(String.format(" %s %d/%d (%d%%)", e.getKey(), c[0], c[1], 100 * c[0] / c[1]));
+        }
+        return sb.toString();
+    }
+
+    private void drawFailures(Graphics2D g2, int x, int y, int width, int height) {
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString("Failing tests per iteration (orange: compile errors)", x, y - 4);
+        g2.setColor(Color.LIGHT_GRAY);
+        g2.drawLine(x, y + height, x + width, y + height);
+
+        if (iterations.isEmpty()) return;
+
+        int max = 1;
+        for (Iteration it : iterations) max = Math.max(max, it.failing);
+
+        int slot = Math.max(2, width / MAX_ITERATIONS);
+        for (int i = 0; i < iterations.size(); i++) {
+            Iteration it = iterations.get(i);
+            int bx = x + i * slot;
+            if (it.green) {
+                g2.setColor(GREEN);
+                g2.fillOval(bx, y + height - slot, slot - 1, slot - 1);
+                continue;
+            }
+            int h = Math.max(1, height * it.failing / max);
+            g2.setColor(it.compileError ? COMPILE : FAILING);
+            g2.fillRect(bx, y + height - h, slot - 1, h);
+        }
+
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString(String.valueOf(max), x + width - g2.getFontMetrics().stringWidth(String.valueOf(max)), y + 10);
+    }
+
+    private void drawLatencies(Graphics2D g2, int x, int y, int width, int height) {
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString("Latency per iteration (blue: Maven, purple: model)", x, y - 4);
+        g2.setColor(Color.LIGHT_GRAY);
+        g2.drawLine(x, y + height, x + width, y + height);
+
+        if (iterations.isEmpty()) return;
+
+        long max = 1;
+        for (Iteration it : iterations) max = Math.max(max, Math.max(it.mavenMillis, it.modelMillis));
+
+        int slot = Math.max(2, width / MAX_ITERATIONS);
+        int bar = Math.max(1, (slot - 1) / 2);
+        for (int i = 0; i < iterations.size(); i++) {
+            Iteration it = iterations.get(i);
+            int bx = x + i * slot;
+
+            int hm = (int) (height * it.mavenMillis / max);
+            g2.setColor(MAVEN);
+            g2.fillRect(bx, y + height - hm, bar, hm);
+
+            int hg = (int) (height * it.modelMillis / max);
+            g2.setColor(MODEL);
+            g2.fillRect(bx + bar, y + height - hg, bar, hg);
+        }
+
+        String label = max >= 1000 ? (max / 1000) + " s" : max + " ms";
+        g2.setColor(Color.DARK_GRAY);
+        g2.drawString(label, x + width - g2.getFontMetrics().stringWidth(label), y + 10);
+    }
+}
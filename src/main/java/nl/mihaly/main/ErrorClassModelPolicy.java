@@ -0,0 +1,59 @@
+package nl.mihaly.main;
+
+import java.util.Map;
+
+/**
+ * Default model policy: picks the model from the kind of the last failure.
+ *
+ * - compile errors go to the fast model (syntax and import mistakes)
+ * - dependency problems go to the pom model
+ * - assertion mismatches and timeouts go to the primary model, and to the heavy
+ *   model once the same failures persist for models.heavyAfter iterations
+ *
+ * The temperature rises with stagnation, so repeated attempts try something different.
+ * Model names come from the settings models.fast, models.primary, models.heavy and models.pom.
+ */
+public class ErrorClassModelPolicy implements ModelPolicy {
+
+    private final String fast = Settings.get("models.fast", "deepseek-coder-v2:16b");
+    private final String primary = Settings.get("models.primary", "deepseek-coder-v2:16b");
+    private final String heavy = Settings.get("models.heavy", "deepseek-r1:70b");
+    private final String pom = Settings.get("models.pom", primary);
+    private final int heavyAfter = Settings.getInt("models.heavyAfter", 5);
+
+    @Override
+    public Choice choose(TestResult result, int stagnantIterations) {
+        FailureClass failure = FailureClass.classify(result);
+        double temperature = Math.min(1.0, 0.2 + 0.1 * stagnantIterations);
+        Map<String, Object> options = Map.of("temperature", temperature);
+
+        switch (failure) {
+            case COMPILE_ERROR:
+                if (stagnantIterations >= heavyAfter && heavyAfter > 0) {
+                    return new Choice("compile-persistent", primary, options);
+                }
+                return new Choice("compile", fast, options);
+            case DEPENDENCY:
+                return new Choice("dependency", pom, options);
+            case TIMEOUT:
+            case ASSERTION_MISMATCH:
+                if (stagnantIterations >= heavyAfter && heavyAfter > 0) {
+                    return new Choice(failure == FailureClass.TIMEOUT ? "timeout-persistent" : "logic-persistent",
+                            heavy, options);
+                }
+                return new Choice(failure == FailureClass.TIMEOUT ? "timeout" : "logic", primary, options);
+            default:
+                return new Choice("initial", primary, options);
+        }
+    }
+
+    @Override
+    public Choice fallback() {
+        return new Choice("fallback", heavy);
+    }
+
+    @Override
+    public Choice pomFix() {
+        return new Choice("pom", pom);
+    }
+}
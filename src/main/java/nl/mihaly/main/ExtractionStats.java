@@ -0,0 +1,40 @@
+package nl.mihaly.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts per model how often Java code could be extracted from a response,
+ * and with which strategy. Shared by all agents in the JVM.
+ */
+public class ExtractionStats {
+
+    private static final ExtractionStats SHARED = new ExtractionStats();
+
+    private final Map<String, Map<String, Integer>> counts = new TreeMap<>();
+
+    public static ExtractionStats shared() {
+        return SHARED;
+    }
+
+    /**
+     * Records one extraction attempt; strategy is null for a miss.
+     */
+    public synchronized void record(String model, String strategy) {
+        counts.computeIfAbsent(model, k -> new TreeMap<>())
+                .merge(strategy == null ? "miss" : strategy, 1, Integer::sum);
+    }
+
+    public synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Integer>> e : counts.entrySet()) {
+            int total = e.getValue().values().stream().mapToInt(Integer::intValue).sum();
+            int misses = e.getValue().getOrDefault("miss", 0);
+            lines.add(String.format("%s: %d responses, miss rate %.0f%%, %s",
+                    e.getKey(), total, 100.0 * misses / Math.max(1, total), e.getValue()));
+        }
+        return lines;
+    }
+}
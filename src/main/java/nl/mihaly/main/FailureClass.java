@@ -0,0 +1,21 @@
+package nl.mihaly.main;
+
+/**
+ * Kind of failure of a test run, used to pick the model for the next iteration.
+ */
+public enum FailureClass {
+    NONE,
+    COMPILE_ERROR,
+    DEPENDENCY,
+    TIMEOUT,
+    ASSERTION_MISMATCH;
+
+    public static FailureClass classify(TestResult result) {
+        if (result == null || result.output.isBlank()) return NONE;
+        if (result.dependencyError) return DEPENDENCY;
+        if (result.compilationError) return COMPILE_ERROR;
+        if (result.timeout) return TIMEOUT;
+        if (result.green) return NONE;
+        return ASSERTION_MISMATCH;
+    }
+}
@@ -0,0 +1,188 @@
+package nl.mihaly.main;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Sets num_predict, num_ctx and stop sequences for each model call, to bound
+ * how long a generation can take.
+ *
+ * - num_predict follows the size of the current class (or, for a new class,
+ *   what the model usually writes), with room for fences and a short remark.
+ *   Reasoning models (generation.reasoningModels) get generation.thinkTokens
+ *   on top for their &lt;think&gt; block, and no more.
+ * - num_ctx fits the prompt plus the answer, rounded up to 4096 tokens. It
+ *   never shrinks for a model, because Ollama reloads a model when its
+ *   context size changes.
+ * - Plain full-class answers stop after the closing code fence, so the model
+ *   does not ramble on after the class.
+ *
+ * Characters per token and answer lengths are learned per model from Ollama's
+ * response metadata. A call cut off by num_predict is repeated with a larger
+ * budget (see OllamaClient); options set by the model policy are kept.
+ */
+public class GenerationBudget {
+
+    /**
+     * What the answer is expected to contain.
+     */
+    public enum Output {
+        JAVA_CLASS, JSON_CLASS, EDIT, POM
+    }
+
+    private static final int CONTEXT_STEP = 4096;
+    private static final int HISTORY = 50;
+    private static final int NEW_CLASS_CHARS = 3000;
+    private static final int POM_CHARS = 1500;
+
+    private static GenerationBudget shared;
+
+    private final Consumer<String> logger;
+    private final boolean enabled;
+    private final int maxPredict;
+    private final int maxContext;
+    private final int thinkTokens;
+    private final List<String> reasoningModels;
+    private final Map<String, ModelStats> stats = new TreeMap<>();
+
+    private static class ModelStats {
+        double promptCharsPerToken = 3.2;
+        double outputCharsPerToken = 3.5;
+        final Deque<Long> evalTokens = new ArrayDeque<>();
+        int calls;
+        int truncated;
+        int context;
+
+        long percentile90() {
+            List<Long> sorted = new ArrayList<>(evalTokens);
+            Collections.sort(sorted);
+            return sorted.get((int) Math.floor(0.9 * (sorted.size() - 1)));
+        }
+    }
+
+    private GenerationBudget(Consumer<String> logger) {
+        this.logger = logger;
+        this.enabled = Settings.getBoolean("generation.budget", true);
+        this.maxPredict = Settings.getInt("generation.maxPredict", 8192);
+        this.maxContext = Settings.getInt("generation.maxContext", 32768);
+        this.thinkTokens = Settings.getInt("generation.thinkTokens", 2048);
+        this.reasoningModels = Settings.getList("generation.reasoningModels", "deepseek-r1,qwq");
+    }
+
+    public static synchronized GenerationBudget shared(Consumer<String> logger) {
+        if (shared == null) {
+            shared = new GenerationBudget(logger);
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the given options with num_predict, num_ctx and stop added.
+     *
+     * @param classChars length of the current class, or 0 if there is none yet
+     */
+    public synchronized Map<String, Object> options(String model, String prompt, int classChars,
+                                                    Map<String, Object> base, Output output) {
+        if (!enabled) return base;
+
+        ModelStats s = stats.computeIfAbsent(model, m -> new ModelStats());
+        boolean reasoning = isReasoning(model);
+
+        int expectedChars = switch (output) {
+            case POM -> POM_CHARS;
+            // Escaped newlines and quotes make the JSON document longer than the source.
+            case JSON_CLASS -> (int) (1.2 * (classChars > 0 ? classChars : NEW_CLASS_CHARS));
+            default -> classChars > 0 ? classChars : NEW_CLASS_CHARS;
+        };
+        long predict = (long) (1.5 * expectedChars / s.outputCharsPerToken) + 256;
+        if (reasoning) {
+            predict += thinkTokens;
+        } else if (classChars == 0 && s.evalTokens.size() >= 5) {
+            predict = Math.max(predict, (long) (1.25 * s.percentile90()));
+        }
+        predict = Math.max(256, Math.min(maxPredict, predict));
+
+        Map<String, Object> options = new LinkedHashMap<>(base);
+        options.putIfAbsent("num_predict", predict);
+        options.putIfAbsent("num_ctx", context(s, model, prompt, ((Number) options.get("num_predict")).longValue()));
+        if (output == Output.JAVA_CLASS && !reasoning) {
+            options.putIfAbsent("stop", List.of("```\n\n"));
+        }
+        return options;
+    }
+
+    /**
+     * Returns the options with twice the num_predict, or null if the budget
+     * cannot grow any further.
+     */
+    public synchronized Map<String, Object> grow(String model, String prompt, Map<String, Object> options) {
+        if (!enabled || !(options.get("num_predict") instanceof Number current)) return null;
+        if (current.longValue() >= maxPredict) return null;
+
+        long predict = Math.min(maxPredict, 2 * current.longValue());
+        Map<String, Object> grown = new LinkedHashMap<>(options);
+        grown.put("num_predict", predict);
+        grown.put("num_ctx", context(stats.computeIfAbsent(model, m -> new ModelStats()), model, prompt, predict));
+        return grown;
+    }
+
+    /**
+     * Learns from the metadata of an answer. Token counts are -1 when absent.
+     */
+    public synchronized void record(String model, int promptChars, long promptTokens,
+                                    int responseChars, long evalTokens, boolean truncated) {
+        ModelStats s = stats.computeIfAbsent(model, m -> new ModelStats());
+        s.calls++;
+
+        // Ollama counts only the uncached part of a prompt, which would skew the ratio.
+        double promptRatio = promptTokens > 0 ? (double) promptChars / promptTokens : 0;
+        if (promptRatio >= 1 && promptRatio <= 8) {
+            s.promptCharsPerToken = 0.8 * s.promptCharsPerToken + 0.2 * promptRatio;
+        }
+        if (evalTokens > 0 && responseChars > 0) {
+            s.outputCharsPerToken = 0.8 * s.outputCharsPerToken + 0.2 * responseChars / evalTokens;
+        }
+
+        if (truncated) {
+            s.truncated++;
+        } else if (evalTokens > 0) {
+            // Truncated answers say nothing about how long a complete one is.
+            s.evalTokens.add(evalTokens);
+            if (s.evalTokens.size() > HISTORY) s.evalTokens.poll();
+        }
+    }
+
+    /**
+     * Returns one status line per model, for logging.
+     */
+    public synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, ModelStats> e : stats.entrySet()) {
+            ModelStats s = e.getValue();
+            lines.add(String.format("%s: %d calls, %d truncated, p90 answer %s tokens, %.1f chars/token, num_ctx %d",
+                    e.getKey(), s.calls, s.truncated, s.evalTokens.isEmpty() ? "-" : String.valueOf(s.percentile90()),
+                    s.outputCharsPerToken, s.context));
+        }
+        return lines;
+    }
+
+    private int context(ModelStats s, String model, String prompt, long predict) {
+        long needed = (long) (prompt.length() / s.promptCharsPerToken) + predict + 256;
+        int context = (int) Math.min(maxContext, (needed + CONTEXT_STEP - 1) / CONTEXT_STEP * CONTEXT_STEP);
+        if (needed > maxContext) {
+            logger.accept("Prompt and answer need about " + needed + " tokens for " + model
+                    + ", more than generation.maxContext " + maxContext + "; the prompt will be cut.");
+        }
+
+        s.context = Math.max(s.context, context);
+        return s.context;
+    }
+
+    private boolean isReasoning(String model) {
+        String lower = model.toLowerCase();
+        for (String r : reasoningModels) {
+            if (lower.contains(r.toLowerCase())) return true;
+        }
+        return false;
+    }
+}
@@ -45,7 +45,17 @@ public class GuiOrganizer {
         return scroll;
     }
 
-    public JPanel createCenterPanel(JPanel classPanel, JScrollPane specScroll, JScrollPane logScroll) {
+    /**
+     * Puts the dashboard to the right of the log.
+     */
+    public JSplitPane createLogAndDashboardPanel(JScrollPane logScroll, DashboardPanel dashboard) {
+        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, logScroll, dashboard);
+        split.setResizeWeight(0.6);
+        split.setPreferredSize(new Dimension(1070, 300));
+        return split;
+    }
+
+    public JPanel createCenterPanel(JPanel classPanel, JScrollPane specScroll, JComponent logScroll) {
         JPanel center = new JPanel();
         center.setLayout(new BoxLayout(center, BoxLayout.Y_AXIS));
         center.add(classPanel);
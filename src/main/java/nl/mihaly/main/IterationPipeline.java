@@ -0,0 +1,176 @@
+package nl.mihaly.main;
+
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Overlaps model generation with Maven builds.
+ *
+ * While candidate k is being built and tested, the next candidate is requested
+ * speculatively with the last known failure output. If candidate k fails with
+ * the same failures, the speculative candidate is used right away; if it goes
+ * green or fails differently, the speculation is cancelled or discarded.
+ *
+ * Keeps timings so the achieved overlap can be reported.
+ */
+public class IterationPipeline {
+
+    private final Consumer<String> logger;
+    private final ExecutorService executor;
+
+    private Future<String> speculation;
+    private String speculationSignature;
+    private long speculationStart;
+
+    private long generateMillis;
+    private long testMillis;
+    private long wallStart;
+    private int speculationsStarted;
+    private int speculationsUsed;
+
+    public IterationPipeline(Consumer<String> logger) {
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "speculative-generation");
+            t.setDaemon(true);
+            return t;
+        });
+        this.wallStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts generating the next candidate in the background, based on the
+     * failure output that is known now.
+     */
+    public void speculate(String testOutput, Supplier<String> generator) {
+        cancel();
+
+        speculationSignature = failureSignature(testOutput);
+        speculationStart = System.currentTimeMillis();
+        speculationsStarted++;
+
+        speculation = executor.submit(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                return generator.get();
+            } finally {
+                addGenerateMillis(System.currentTimeMillis() - start);
+            }
+        });
+    }
+
+    /**
+     * Returns the speculative candidate if it was generated for the same failures
+     * as the given output, waiting for it to finish if needed. Returns null if
+     * there is no usable speculation; a stale one is cancelled.
+     */
+    public String take(String testOutput) {
+        if (speculation == null) return null;
+
+        if (!failureSignature(testOutput).equals(speculationSignature)) {
+            logger.accept("Failures changed since the speculative request; discarding it.");
+            AgentEvents.cacheLookup("speculation", false);
+            cancel();
+            return null;
+        }
+
+        try {
+            String candidate = speculation.get();
+            speculation = null;
+            AgentEvents.cacheLookup("speculation", candidate != null);
+            if (candidate != null) {
+                speculationsUsed++;
+                logger.accept("Using speculative candidate (requested "
+                        + (System.currentTimeMillis() - speculationStart) + " ms ago).");
+            }
+            return candidate;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            speculation = null;
+            return null;
+        }
+    }
+
+    /**
+     * Cancels the running speculation, if any.
+     */
+    public void cancel() {
+        if (speculation != null) {
+            speculation.cancel(true);
+            speculation = null;
+        }
+    }
+
+    /**
+     * Runs a Maven build and records its duration.
+     */
+    public String timeTest(Supplier<String> build) {
+        long start = System.currentTimeMillis();
+        try {
+            return build.get();
+        } finally {
+            testMillis += System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * Runs a foreground generation and records its duration.
+     */
+    public String timeGenerate(Supplier<String> generator) {
+        long start = System.currentTimeMillis();
+        try {
+            return generator.get();
+        } finally {
+            addGenerateMillis(System.currentTimeMillis() - start);
+        }
+    }
+
+    private synchronized void addGenerateMillis(long millis) {
+        generateMillis += millis;
+    }
+
+    /**
+     * Logs generate time, test time and the overlap between them, then stops the worker.
+     */
+    public void report() {
+        cancel();
+        executor.shutdownNow();
+
+        long wall = System.currentTimeMillis() - wallStart;
+        long generate;
+        synchronized (this) {
+            generate = generateMillis;
+        }
+        long overlap = Math.max(0, generate + testMillis - wall);
+
+        logger.accept(String.format(
+                "Pipeline: generate %d ms, test %d ms, wall %d ms, overlap %d ms (%.0f%%), speculations used %d/%d",
+                generate, testMillis, wall, overlap,
+                wall == 0 ? 0.0 : 100.0 * overlap / wall,
+                speculationsUsed, speculationsStarted));
+    }
+
+    /**
+     * Reduces Maven output to the lines that identify the failures, without
+     * timings, so two runs with the same failures compare equal.
+     */
+    static String failureSignature(String output) {
+        if (output == null) return "";
+
+        StringBuilder sb = new StringBuilder();
+        for (String line : output.split("\n")) {
+            String l = line.trim();
+            if (!l.startsWith("[ERROR]")) continue;
+            if (l.contains("[Help") || l.contains("Re-run Maven") || l.contains("To see the full stack")
+                    || l.contains("For more information") || l.equals("[ERROR]")) {
+                continue;
+            }
+            sb.append(l.replaceAll(",? Time elapsed: [\\d.,]+ s", "")).append('\n');
+        }
+        return sb.toString();
+    }
+}
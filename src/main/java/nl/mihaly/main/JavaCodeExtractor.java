@@ -1,31 +1,157 @@
 package nl.mihaly.main;
 
 import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * Extracts Java source code from AI responses formatted with ```java code blocks.
+ * Extracts Java source code from AI responses.
  *
- * Locates the code fence, extracts the enclosed Java code, and returns it as a string.
+ * Tries several strategies in order: a JSON document with a "source" field
+ * (structured output), a ```java fence in any letter case, a bare ``` fence
+ * that contains a type declaration, a ```java fence left open by a stop
+ * sequence, and finally unfenced code from the first package/import/type line
+ * to the last closing brace. Reasoning in <think>
+ * blocks is removed first. Hits and misses are counted per model.
  */
 public class JavaCodeExtractor {
 
+    private static final Pattern THINK = Pattern.compile("(?is)<think>.*?</think>");
+    private static final Pattern JAVA_FENCE = Pattern.compile("(?is)```\\s*java\\s*\\n(.*?)```");
+    // Left open when a stop sequence ended the answer at the closing fence; runs to the end of the
+    // response text (OllamaClient.call returns only Ollama's "response" field).
+    private static final Pattern OPEN_JAVA_FENCE = Pattern.compile("(?is)```\\s*java\\s*\\n(.*)\\z");
+    private static final Pattern BARE_FENCE = Pattern.compile("(?s)```[ \\t]*\\n(.*?)```");
+    private static final Pattern TYPE_DECL = Pattern.compile("\\b(class|interface|enum|record)\\s+\\w+");
+    private static final Pattern CODE_START =
+            Pattern.compile("(?m)^\\s*(package\\s+[\\w.]+\\s*;|import\\s+[\\w.*]+\\s*;|"
+                    + "(public\\s+|final\\s+|abstract\\s+)*(class|interface|enum|record)\\s+\\w+)");
+
+    /**
+     * JSON schema for structured output: the class plus a short rationale.
+     */
+    public static final String SCHEMA = """
+            {"type": "object", "properties": {\
+            "packageName": {"type": "string"}, \
+            "className": {"type": "string"}, \
+            "source": {"type": "string"}, \
+            "rationale": {"type": "string"}}, \
+            "required": ["packageName", "className", "source"]}""";
+
     private final Consumer<String> logger;
 
     public JavaCodeExtractor(Consumer<String> logger) {
         this.logger = logger;
     }
 
+    /**
+     * Extracts the Java source without recording the outcome, e.g. to probe a
+     * response that is usually something else.
+     */
     public String extract(String aiResponse) {
-        if (aiResponse == null) return null;
+        return extract(aiResponse, null);
+    }
 
-        int start = aiResponse.indexOf("```java");
-        if (start == -1) return null;
+    /**
+     * Extracts the Java source and records the outcome for the given model,
+     * unless the model is null.
+     */
+    public String extract(String aiResponse, String model) {
+        if (aiResponse == null) {
+            if (model != null) ExtractionStats.shared().record(model, null);
+            return null;
+        }
+
+        String text = THINK.matcher(aiResponse).replaceAll("");
+        // An unterminated <think> block means the answer was cut off while reasoning.
+        int openThink = text.indexOf("<think>");
+        if (openThink >= 0) text = text.substring(0, openThink);
+
+        String code = fromJson(text);
+        String strategy = "json";
+
+        if (code == null) {
+            code = firstMatch(JAVA_FENCE, text, false);
+            strategy = "java-fence";
+        }
+        if (code == null) {
+            code = firstMatch(BARE_FENCE, text, true);
+            strategy = "bare-fence";
+        }
+        if (code == null) {
+            code = openFence(text);
+            strategy = "open-fence";
+        }
+        if (code == null) {
+            code = unfenced(text);
+            strategy = "unfenced";
+        }
+
+        if (model != null) ExtractionStats.shared().record(model, code == null ? null : strategy);
+        if (code != null && !strategy.equals("java-fence")) {
+            logger.accept("Extracted Java code using strategy: " + strategy);
+        }
+        return code;
+    }
 
-        int end = aiResponse.indexOf("```", start + 7);
-        if (end == -1) return null;
+    /**
+     * Extracts the source from a structured (JSON schema) response.
+     */
+    public String extractStructured(String json, String model) {
+        String code = fromJson(json);
+        ExtractionStats.shared().record(model, code == null ? null : "structured");
+        if (code != null) {
+            String rationale = Json.stringField(json, "rationale");
+            if (rationale != null && !rationale.isBlank()) {
+                logger.accept("Model rationale: " + rationale);
+            }
+        }
+        return code;
+    }
+
+    private String fromJson(String text) {
+        if (text == null || !text.contains("\"source\"")) return null;
+        String source = Json.stringField(text, "source");
+        if (source == null) return null;
+
+        // Some models still wrap the source in a fence inside the JSON.
+        String fenced = firstMatch(JAVA_FENCE, source, false);
+        String code = (fenced != null ? fenced : source).trim();
+        return TYPE_DECL.matcher(code).find() ? code : null;
+    }
+
+    private String firstMatch(Pattern fence, String text, boolean requireType) {
+        Matcher m = fence.matcher(text);
+        while (m.find()) {
+            String code = m.group(1).trim();
+            if (code.isBlank()) continue;
+            if (requireType && !TYPE_DECL.matcher(code).find()) continue;
+            return code;
+        }
+        return null;
+    }
+
+    private String openFence(String text) {
+        Matcher m = OPEN_JAVA_FENCE.matcher(text);
+        if (!m.find()) return null;
+
+        String body = m.group(1);
+        int end = body.lastIndexOf('}');
+        if (end < 0) return null;
+
+        String code = body.substring(0, end + 1).trim();
+        return TYPE_DECL.matcher(code).find() ? code : null;
+    }
+
+    private String unfenced(String text) {
+        Matcher m = CODE_START.matcher(text);
+        if (!m.find()) return null;
+
+        int end = text.lastIndexOf('}');
+        if (end <= m.start()) return null;
 
-        String code = aiResponse.substring(start + 7, end).trim();
-        return code.isBlank() ? null : code;
+        String code = text.substring(m.start(), end + 1).trim();
+        return TYPE_DECL.matcher(code).find() ? code : null;
     }
 
     public String extractXml(String aiResponse) {
@@ -0,0 +1,114 @@
+package nl.mihaly.main;
+
+/**
+ * Minimal helpers to read single fields from flat JSON documents, such as
+ * Ollama responses. Not a general JSON parser: the first occurrence of the
+ * field name is used, at any nesting level.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Returns the decoded value of a string field, or null if it is absent.
+     */
+    static String stringField(String json, String field) {
+        int valueStart = valueStart(json, field);
+        if (valueStart < 0 || json.charAt(valueStart) != '"') return null;
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = valueStart + 1; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"') return sb.toString();
+            if (c != '\\' || i + 1 >= json.length()) {
+                sb.append(c);
+                continue;
+            }
+
+            char e = json.charAt(++i);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    if (i + 4 < json.length()) {
+                        try {
+                            sb.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                            i += 4;
+                        } catch (NumberFormatException ex) {
+                            sb.append("\\u");
+                        }
+                    }
+                }
+                default -> sb.append(e); // \" \\ \/
+            }
+        }
+        return null; // unterminated string
+    }
+
+    /**
+     * Returns the value of a numeric field, or -1 if it is absent.
+     */
+    static long longField(String json, String field) {
+        int start = valueStart(json, field);
+        if (start < 0) return -1;
+
+        int end = start;
+        while (end < json.length() && (Character.isDigit(json.charAt(end)) || json.charAt(end) == '-')) {
+            end++;
+        }
+        try {
+            return Long.parseLong(json.substring(start, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Escapes a string for use inside a JSON string literal.
+     */
+    static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 16);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '"' -> sb.append("\\\"");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int valueStart(String json, String field) {
+        if (json == null) return -1;
+
+        String key = "\"" + field + "\"";
+        int from = 0;
+        while (true) {
+            int k = json.indexOf(key, from);
+            if (k < 0) return -1;
+
+            int i = k + key.length();
+            while (i < json.length() && Character.isWhitespace(json.charAt(i))) i++;
+            if (i < json.length() && json.charAt(i) == ':') {
+                i++;
+                while (i < json.length() && Character.isWhitespace(json.charAt(i))) i++;
+                return i < json.length() ? i : -1;
+            }
+            from = k + 1;
+        }
+    }
+}
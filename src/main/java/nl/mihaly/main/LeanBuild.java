@@ -0,0 +1,322 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Works out the cheapest Maven invocation that still tests the target class.
+ *
+ * - Multi-module projects: only the module that owns the class is built, with
+ *   the modules it depends on ("-pl module -am").
+ * - Surefire only runs the test classes that reference the target class.
+ * - Once a build got past dependency resolution for the current poms, later
+ *   builds run offline ("-o"); if that fails to resolve, MavenRunner retries online.
+ * - A lean profile of skip properties turns off plugins that are not needed to
+ *   compile and test (enforcer, checkstyle, coverage...).
+ *
+ * Also keeps first-run and steady-state timings per project.
+ */
+public class LeanBuild {
+
+    /**
+     * Skip switches of plugins that are commonly bound to the build lifecycle
+     * but do not influence compiling and running tests.
+     */
+    static final List<String> LEAN_PROFILE = List.of(
+            "-Denforcer.skip=true",
+            "-Dcheckstyle.skip=true",
+            "-Djacoco.skip=true",
+            "-Dspotbugs.skip=true",
+            "-Dpmd.skip=true",
+            "-Dcpd.skip=true",
+            "-Dspotless.check.skip=true",
+            "-Dlicense.skip=true",
+            "-Drat.skip=true",
+            "-Danimal.sniffer.skip=true",
+            "-Djapicmp.skip=true",
+            "-Drevapi.skip=true",
+            "-Dmaven.javadoc.skip=true",
+            "-Dmaven.source.skip=true",
+            "-Dgpg.skip=true",
+            "-Dformatter.skip=true",
+            "-Dimpsort.skip=true"
+    );
+
+    private static final Pattern MODULE = Pattern.compile("<module>\\s*([^<]+?)\\s*</module>");
+
+    private static LeanBuild shared;
+
+    private final Consumer<String> logger;
+    private final boolean enabled;
+    private final Path resolvedDir;
+    private final Map<String, long[]> timings = new HashMap<>();
+
+    private LeanBuild(Consumer<String> logger) {
+        this.logger = logger;
+        this.enabled = Settings.getBoolean("maven.lean", true);
+        this.resolvedDir = Paths.get(System.getProperty("user.home"), ".codingai", "maven-resolved");
+    }
+
+    public static synchronized LeanBuild shared(Consumer<String> logger) {
+        if (shared == null) {
+            shared = new LeanBuild(logger);
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the Maven arguments for testing the given class, without the goal.
+     * With a null class name the whole project is tested.
+     */
+    public List<String> arguments(Path root, String packageName, String className, boolean offline) {
+        List<String> args = new ArrayList<>();
+        args.add("-ntp");
+        if (!enabled) return args;
+
+        if (offline) args.add("-o");
+        args.addAll(LEAN_PROFILE);
+
+        if (className == null) return args;
+
+        Path module = owningModule(root, packageName, className);
+        if (module != null && !module.equals(root)) {
+            args.add("-pl");
+            args.add(root.relativize(module).toString().replace('\\', '/'));
+            args.add("-am");
+        }
+
+        if (Settings.getBoolean("maven.testFilter", true)) {
+            List<String> tests = relevantTests(root, module == null ? root : module, packageName, className);
+            if (!tests.isEmpty()) {
+                args.add("-Dtest=" + String.join(",", tests));
+                // Upstream modules built by -am have none of these tests.
+                args.add("-Dsurefire.failIfNoSpecifiedTests=false");
+            }
+        }
+        return args;
+    }
+
+    /**
+     * True if an earlier build resolved all dependencies of the current poms.
+     */
+    public boolean canRunOffline(Path root) {
+        return enabled && Settings.getBoolean("maven.offline", true)
+                && Files.exists(resolvedDir.resolve(pomKey(root)));
+    }
+
+    /**
+     * Records the outcome of a build: whether dependencies are resolved now,
+     * and its duration. Returns false if an offline build failed to resolve
+     * something, so it should be repeated online.
+     */
+    public boolean recordRun(Path root, boolean offline, String output, long millis) {
+        String key = pomKey(root);
+        Path marker = resolvedDir.resolve(key);
+
+        if (offline && offlineResolutionFailed(output)) {
+            logger.accept("Offline build is missing dependencies; retrying online.");
+            deleteQuietly(marker);
+            return false;
+        }
+
+        if (!offline && reachedCompilation(output) && !Files.exists(marker)) {
+            try {
+                Files.createDirectories(resolvedDir);
+                Files.writeString(marker, root.toString(), StandardCharsets.UTF_8);
+                logger.accept("Dependencies resolved; next builds run offline.");
+            } catch (IOException e) {
+                logger.accept("Cannot store dependency state: " + e.getMessage());
+            }
+        }
+
+        logTiming(key, millis);
+        return true;
+    }
+
+    // ------------------------------------------------------------
+    // MODULES AND TESTS
+    // ------------------------------------------------------------
+
+    /**
+     * The module directory containing the class or its test, or null if none does.
+     */
+    Path owningModule(Path root, String packageName, String className) {
+        String pkgPath = packageName == null || packageName.isBlank() ? "" : packageName.replace('.', '/') + "/";
+
+        Path fallback = null;
+        for (Path module : modules(root)) {
+            if (Files.exists(module.resolve("src/test/java/" + pkgPath + className + "Test.java"))) return module;
+            if (fallback == null && Files.exists(module.resolve("src/main/java/" + pkgPath + className + ".java"))) {
+                fallback = module;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * The project itself and all modules below it, parents first.
+     */
+    List<Path> modules(Path root) {
+        List<Path> result = new ArrayList<>();
+        Deque<Path> todo = new ArrayDeque<>(List.of(root));
+
+        while (!todo.isEmpty()) {
+            Path dir = todo.poll();
+            if (result.contains(dir)) continue;
+            result.add(dir);
+
+            Path pom = dir.resolve("pom.xml");
+            if (!Files.exists(pom)) continue;
+            try {
+                Matcher m = MODULE.matcher(Files.readString(pom, StandardCharsets.UTF_8));
+                while (m.find()) {
+                    Path module = dir.resolve(m.group(1)).normalize();
+                    // A module may point at a pom file instead of a directory.
+                    if (module.toString().endsWith(".xml")) module = module.getParent();
+                    if (Files.isDirectory(module)) todo.add(module);
+                }
+            } catch (IOException e) {
+                logger.accept("Cannot read " + pom + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Simple names of the test classes in the module that reference the class.
+     */
+    private List<String> relevantTests(Path root, Path module, String packageName, String className) {
+        List<String> names = new ArrayList<>();
+        for (Path test : testsReferencing(root, module, packageName, className)) {
+            String name = test.getFileName().toString();
+            names.add(name.substring(0, name.length() - ".java".length()));
+        }
+        return names;
+    }
+
+    /**
+     * The test sources a build for the class runs: those referencing it in its
+     * module, or every test of the project when there is no class or no filter.
+     */
+    List<Path> testFiles(Path root, String packageName, String className) {
+        if (className == null || !enabled || !Settings.getBoolean("maven.testFilter", true)) {
+            List<Path> all = new ArrayList<>();
+            for (Path module : modules(root)) {
+                all.addAll(scanTests(module, null));
+            }
+            return all;
+        }
+
+        Path module = owningModule(root, packageName, className);
+        List<Path> tests = testsReferencing(root, module == null ? root : module, packageName, className);
+        return tests.isEmpty() ? testFiles(root, packageName, null) : tests;
+    }
+
+    private List<Path> testsReferencing(Path root, Path module, String packageName, String className) {
+        if (module.equals(root)) {
+            return new ArrayList<>(ProjectIndex.forProject(root, logger).testsReferencing(packageName, className).keySet());
+        }
+        // Not indexed: a watched index per module would outlive scratch copies.
+        return scanTests(module, className);
+    }
+
+    private List<Path> scanTests(Path module, String className) {
+        Path testRoot = module.resolve("src/test/java");
+        if (!Files.isDirectory(testRoot)) return List.of();
+
+        Pattern reference = className == null ? null : Pattern.compile("\\b" + Pattern.quote(className) + "\\b");
+        try (Stream<Path> files = Files.walk(testRoot)) {
+            return files.filter(p -> p.toString().endsWith(".java"))
+                    .filter(p -> {
+                        if (reference == null) return true;
+                        try {
+                            return reference.matcher(Files.readString(p, StandardCharsets.UTF_8)).find();
+                        } catch (IOException e) {
+                            return false;
+                        }
+                    })
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            logger.accept("Cannot scan tests in " + testRoot + ": " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    // ------------------------------------------------------------
+    // DEPENDENCY STATE
+    // ------------------------------------------------------------
+
+    /**
+     * Hash of all poms of the project, so a changed dependency means online again.
+     */
+    private String pomKey(Path root) {
+        StringBuilder sb = new StringBuilder();
+        for (Path module : modules(root)) {
+            try {
+                sb.append(Files.readString(module.resolve("pom.xml"), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                sb.append(module.getFileName());
+            }
+        }
+        return ProjectIndex.sha256(sb.toString()).substring(0, 24);
+    }
+
+    private static boolean reachedCompilation(String output) {
+        if (output.contains("Could not resolve dependencies")) return false;
+        if (output.contains("Failed to read artifact descriptor")) return false;
+        return output.contains("BUILD SUCCESS")
+                || output.contains("T E S T S")
+                || output.contains("COMPILATION ERROR");
+    }
+
+    private static boolean offlineResolutionFailed(String output) {
+        String lower = output.toLowerCase();
+        return lower.contains("offline")
+                && (lower.contains("has not been downloaded")
+                || lower.contains("could not resolve")
+                || lower.contains("cannot access"));
+    }
+
+    private void logTiming(String key, long millis) {
+        long first;
+        long steadyCount;
+        long steadyTotal;
+        synchronized (this) {
+            long[] t = timings.get(key);
+            if (t == null) {
+                t = new long[]{millis, 0, 0};
+                timings.put(key, t);
+            } else {
+                t[1]++;
+                t[2] += millis;
+            }
+            first = t[0];
+            steadyCount = t[1];
+            steadyTotal = t[2];
+        }
+
+        if (steadyCount == 0) {
+            logger.accept("Maven first run: " + millis + " ms");
+        } else {
+            logger.accept("Maven run: " + millis + " ms (first run " + first + " ms, steady state avg "
+                    + steadyTotal / steadyCount + " ms over " + steadyCount + " runs)");
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // Worst case the next build tries offline once more.
+        }
+    }
+}
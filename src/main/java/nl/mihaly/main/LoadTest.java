@@ -0,0 +1,356 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Soak and scaling benchmark: runs 1..N agents at the same time against a
+ * local Ollama stand-in (StubOllama) on generated sample projects, and reports
+ * per concurrency level:
+ *
+ * - throughput in classes to green per hour
+ * - p50 and p99 iteration latency
+ * - heap and thread high-water marks of this JVM
+ * - the highest number of child processes (Maven, forked test JVMs, build workers)
+ * - log lines, model calls and the highest number of concurrent model calls
+ *
+ * The stub answers after --latency ms (normally distributed with --jitter) and
+ * follows --script per class, e.g. "fail,pass": wrong code first, then the
+ * correct class. Everything CodingAI stores under ~/.codingai goes to the
+ * benchmark home instead (--home, default a temporary directory); the Maven
+ * repository is shared. Results are appended to --out as CSV, so runs can be
+ * compared over time.
+ *
+ * Usage: LoadTest [--levels 1,2,4,8] [--classes 2] [--latency 300] [--jitter 100]
+ *                 [--script fail,pass] [--home dir] [--out loadtest.csv] [--log file]
+ */
+public class LoadTest {
+
+    private final List<Integer> levels;
+    private final int classesPerRun;
+    private final Path home;
+    private final Path out;
+    private final StubOllama stub;
+    private final Consumer<String> log;
+    private final CancellationToken token = new CancellationToken();
+
+    private final ProjectScaffolder scaffolder;
+    private final AtomicInteger nextClass = new AtomicInteger();
+    private final AtomicLong logLines = new AtomicLong();
+    private final Queue<Long> iterationMillis = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<long[]> lastEvent = ThreadLocal.withInitial(() -> new long[1]);
+
+    private LoadTest(List<Integer> levels, int classesPerRun, Path home, Path out, StubOllama stub, PrintWriter logFile) {
+        this.levels = levels;
+        this.classesPerRun = classesPerRun;
+        this.home = home;
+        this.out = out;
+        this.stub = stub;
+        this.log = line -> {
+            logLines.incrementAndGet();
+            if (logFile != null) {
+                synchronized (logFile) {
+                    logFile.println(line);
+                }
+            }
+        };
+        this.scaffolder = new ProjectScaffolder(log, token);
+    }
+
+    /**
+     * One measured concurrency level.
+     */
+    private static class Level {
+        int classes;
+        int green;
+        long wallMillis;
+        int iterations;
+        long p50;
+        long p99;
+        long heapPeakBytes;
+        int threadPeak;
+        long processPeak;
+        long logLines;
+        long modelCalls;
+        int modelCallsInFlight;
+
+        double greenPerHour() {
+            return wallMillis == 0 ? 0 : green * 3_600_000.0 / wallMillis;
+        }
+    }
+
+    // ------------------------------------------------------------
+    // RUN
+    // ------------------------------------------------------------
+
+    private boolean run() throws IOException, InterruptedException {
+        AgentEvents.subscribe(new AgentEvents.Listener() {
+            @Override
+            public void runStarted(String className) {
+                lastEvent.get()[0] = System.currentTimeMillis();
+            }
+
+            @Override
+            public void iterationFinished(int iteration, TestResult result) {
+                long now = System.currentTimeMillis();
+                long[] last = lastEvent.get();
+                if (last[0] > 0) iterationMillis.add(now - last[0]);
+                last[0] = now;
+            }
+        });
+
+        // All sample projects share one pom, so dependencies and the CDS archive are prepared once.
+        Path template = home.resolve("template").resolve("sample");
+        String pom = scaffolder.create(template, "bench", "WarmupSampleTest.java", testSource("WarmupSample"));
+        System.out.println("Warming up Maven...");
+        if (!scaffolder.warmUp(pom)) {
+            System.err.println("Maven warm-up failed; see the log.");
+            return false;
+        }
+
+        System.out.printf("%6s %8s %6s %8s %11s %8s %8s %6s %9s %8s %6s %9s %8s %8s%n",
+                "level", "classes", "green", "wall s", "green/hour", "p50 ms", "p99 ms", "iters",
+                "heap MB", "threads", "procs", "log lines", "model", "in-flight");
+
+        boolean allGreen = true;
+        for (int level : levels) {
+            if (token.isCancelled()) break;
+            Level result = runLevel(level);
+            allGreen &= result.green == result.classes;
+
+            System.out.printf("%6d %8d %6d %8.1f %11.1f %8d %8d %6d %9.1f %8d %6d %9d %8d %8d%n",
+                    level, result.classes, result.green, result.wallMillis / 1000.0, result.greenPerHour(),
+                    result.p50, result.p99, result.iterations, result.heapPeakBytes / 1048576.0,
+                    result.threadPeak, result.processPeak, result.logLines, result.modelCalls,
+                    result.modelCallsInFlight);
+            append(level, result);
+        }
+        return allGreen;
+    }
+
+    private Level runLevel(int level) throws InterruptedException {
+        resetPeaks();
+        iterationMillis.clear();
+        long logBefore = logLines.get();
+        long callsBefore = stub.calls();
+        stub.takeMaxInFlight();
+
+        AtomicLong processPeak = new AtomicLong();
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                processPeak.accumulateAndGet(ProcessHandle.current().descendants().count(), Math::max);
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "loadtest-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        AtomicInteger green = new AtomicInteger();
+        AtomicInteger classes = new AtomicInteger();
+        List<Thread> runs = new ArrayList<>();
+        long start = System.currentTimeMillis();
+
+        for (int r = 0; r < level; r++) {
+            Thread t = new Thread(() -> {
+                for (int c = 0; c < classesPerRun && !token.isCancelled(); c++) {
+                    classes.incrementAndGet();
+                    if (generateOne()) green.incrementAndGet();
+                }
+            }, "loadtest-run-" + r);
+            runs.add(t);
+            t.start();
+        }
+        for (Thread t : runs) {
+            t.join();
+        }
+
+        Level result = new Level();
+        result.wallMillis = System.currentTimeMillis() - start;
+        sampler.interrupt();
+
+        List<Long> latencies = new ArrayList<>(iterationMillis);
+        Collections.sort(latencies);
+        result.classes = classes.get();
+        result.green = green.get();
+        result.iterations = latencies.size();
+        result.p50 = percentile(latencies, 0.50);
+        result.p99 = percentile(latencies, 0.99);
+        result.heapPeakBytes = heapPeak();
+        result.threadPeak = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+        result.processPeak = processPeak.get();
+        result.logLines = logLines.get() - logBefore;
+        result.modelCalls = stub.calls() - callsBefore;
+        result.modelCallsInFlight = stub.takeMaxInFlight();
+        return result;
+    }
+
+    /**
+     * Generates a fresh sample class in its own project; true if it went green.
+     */
+    private boolean generateOne() {
+        String className = "Sample" + nextClass.incrementAndGet();
+        Path project = home.resolve("runs").resolve(className).resolve("sample");
+        try {
+            // Same directory name, hence the same artifactId and pom as the template.
+            scaffolder.create(project, "bench", className + "Test.java", testSource(className));
+        } catch (IOException e) {
+            log.accept("Cannot create " + project + ": " + e.getMessage());
+            return false;
+        }
+
+        String specification = "Class " + className + " has a method int add(int a, int b) that returns a + b.";
+        return new CodingAIAgent(log, specification, className, "bench", token).runFullProcess(project);
+    }
+
+    private static String testSource(String className) {
+        return """
+                package bench;
+
+                import org.junit.jupiter.api.Test;
+
+                import static org.junit.jupiter.api.Assertions.assertEquals;
+
+                class %1$sTest {
+
+                    @Test
+                    void addsTwoNumbers() {
+                        assertEquals(5, new %1$s().add(2, 3));
+                        assertEquals(-1, new %1$s().add(2, -3));
+                    }
+                }
+                """.formatted(className);
+    }
+
+    // ------------------------------------------------------------
+    // MEASUREMENTS
+    // ------------------------------------------------------------
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+    }
+
+    /**
+     * Sum of the peak usage of the heap pools; an upper bound of the peak heap.
+     */
+    private static long heapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) return 0;
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1));
+    }
+
+    private void append(int level, Level r) {
+        if (out == null) return;
+        try {
+            boolean header = !Files.exists(out);
+            String line = String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.1f,%.2f,%d,%d,%d,%.1f,%d,%d,%d,%d,%d%n",
+                    java.time.Instant.now(), level, r.classes, r.green, r.wallMillis, r.greenPerHour(),
+                    r.iterations == 0 ? 0.0 : (double) r.iterations / Math.max(1, r.classes), r.p50, r.p99,
+                    r.iterations, r.heapPeakBytes / 1048576.0, r.threadPeak, r.processPeak, r.logLines,
+                    r.modelCalls, r.modelCallsInFlight);
+            Files.writeString(out, (header ? "timestamp,level,classes,green,wallMillis,greenPerHour,"
+                            + "iterationsPerClass,p50Millis,p99Millis,iterations,heapPeakMB,threadPeak,"
+                            + "processPeak,logLines,modelCalls,modelCallsInFlight\n" : "") + line,
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Cannot write " + out + ": " + e.getMessage());
+        }
+    }
+
+    // ------------------------------------------------------------
+    // MAIN
+    // ------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> levels = List.of(1, 2, 4, 8);
+        int classes = 2;
+        long latency = 300;
+        long jitter = 100;
+        List<String> script = List.of("fail", "pass");
+        Path home = null;
+        Path out = Path.of("loadtest.csv");
+        Path logFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--levels" -> levels = Arrays.stream(value.split(",")).map(s -> Integer.parseInt(s.trim())).toList();
+                    case "--classes" -> classes = Integer.parseInt(value);
+                    case "--latency" -> latency = Long.parseLong(value);
+                    case "--jitter" -> jitter = Long.parseLong(value);
+                    case "--script" -> script = List.of(value.split(","));
+                    case "--home" -> home = Path.of(value);
+                    case "--out" -> out = Path.of(value);
+                    case "--log" -> logFile = Path.of(value);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+                i++;
+            }
+            if (levels.isEmpty() || classes < 1) throw new IllegalArgumentException("levels/classes");
+        } catch (RuntimeException e) {
+            System.err.println("Usage: LoadTest [--levels 1,2,4,8] [--classes 2] [--latency 300] [--jitter 100]");
+            System.err.println("                [--script fail,pass] [--home dir] [--out loadtest.csv] [--log file]");
+            System.exit(2);
+        }
+
+        // Before any setting or shared component is read: isolate ~/.codingai, keep the Maven repository.
+        String userHome = System.getProperty("user.home");
+        if (home == null) home = Files.createTempDirectory("codingai-loadtest-");
+        Files.createDirectories(home);
+        Path m2 = home.resolve(".m2");
+        if (!Files.exists(m2) && Files.isDirectory(Path.of(userHome, ".m2"))) {
+            Files.createSymbolicLink(m2, Path.of(userHome, ".m2"));
+        }
+        System.setProperty("user.home", home.toString());
+
+        StubOllama stub = new StubOllama(latency, jitter, script);
+        int maxLevel = Collections.max(levels);
+        System.setProperty("ollama.endpoints", stub.url() + "|" + Math.max(1, maxLevel));
+        System.setProperty("ollama.healthCheckSeconds", "300");
+        System.setProperty("journal.resume", "false");
+        // Every sample gets the same kind of prompt; earlier green samples are not shown as examples.
+        System.setProperty("retrieval.examples", "0");
+
+        System.out.println("Benchmark home " + home + ", stub Ollama at " + stub.url()
+                + ", latency " + latency + " +- " + jitter + " ms, script " + script);
+
+        PrintWriter logWriter = logFile == null ? null
+                : new PrintWriter(Files.newBufferedWriter(logFile, StandardCharsets.UTF_8), true);
+        LoadTest test = new LoadTest(levels, classes, home, out, stub, logWriter);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> test.token.cancel("Interrupted")));
+
+        boolean green = test.run();
+        if (logWriter != null) logWriter.close();
+        stub.stop();
+        System.out.println(out == null ? "" : "Results appended to " + out.toAbsolutePath());
+        System.exit(green ? 0 : 1);
+    }
+}
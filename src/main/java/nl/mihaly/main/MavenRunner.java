@@ -2,50 +2,163 @@ package nl.mihaly.main;
 
 import java.io.*;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
  * Executes Maven test runs and collects their output.
  *
  * Provides methods to run the test suite and determine whether all tests passed.
+ * Cancelling the run's CancellationToken kills the Maven process and its children.
+ * The forked test JVM is started with a CDS archive when one exists (see CdsArchives).
+ * On Linux the build runs on one of the shared BuildWorkerPool processes, or
+ * here if no worker is available.
  */
 public class MavenRunner implements Texts {
 
     private final Consumer<String> logger;
+    private final CancellationToken token;
 
     public MavenRunner(Consumer<String> logger) {
+        this(logger, new CancellationToken());
+    }
+
+    public MavenRunner(Consumer<String> logger, CancellationToken token) {
         this.logger = logger;
+        this.token = token;
     }
 
+    /**
+     * Runs all tests of the project.
+     */
     public String runTests(Path root) {
+        return runTests(root, null, null);
+    }
+
+    /**
+     * Runs the tests of the given class as cheaply as possible (see LeanBuild):
+     * only its module, only the tests that reference it, offline once the
+     * dependencies are resolved. An offline build that misses a dependency is
+     * repeated online. Large JUnit 5 suites run in parallel (see ParallelTests);
+     * a parallel run that looks like a race is repeated sequentially, and stays
+     * sequential if that passes.
+     */
+    public String runTests(Path root, String packageName, String className) {
+        if (token.isCancelled()) {
+            return "Maven run cancelled: " + token.reason();
+        }
+
+        ParallelTests parallel = ParallelTests.shared(logger);
+        List<String> parallelArgs = parallel.arguments(root, packageName, className);
+
+        String output = runLean(root, packageName, className, parallelArgs);
+        if (!parallelArgs.isEmpty() && !token.isCancelled() && parallel.raceSuspected(output)) {
+            output = runLean(root, packageName, className, List.of());
+            if (!token.isCancelled()) parallel.sequentialResult(root, packageName, className, output);
+        }
+        return output;
+    }
+
+    private String runLean(Path root, String packageName, String className, List<String> extraArgs) {
+        LeanBuild lean = LeanBuild.shared(logger);
+        boolean offline = lean.canRunOffline(root);
+
+        long start = System.currentTimeMillis();
+        String output = execute(root, withExtra(lean.arguments(root, packageName, className, offline), extraArgs));
+        if (lean.recordRun(root, offline, output, System.currentTimeMillis() - start) || token.isCancelled()) {
+            return output;
+        }
+
+        start = System.currentTimeMillis();
+        output = execute(root, withExtra(lean.arguments(root, packageName, className, false), extraArgs));
+        lean.recordRun(root, false, output, System.currentTimeMillis() - start);
+        return output;
+    }
+
+    private static List<String> withExtra(List<String> args, List<String> extraArgs) {
+        List<String> all = new ArrayList<>(args);
+        all.addAll(extraArgs);
+        return all;
+    }
+
+    private String execute(Path root, List<String> args) {
+        CdsArchives.Launch cds = CdsArchives.shared(logger).prepare(root);
+        long start = System.currentTimeMillis();
+
         try {
-            String mvnCmd = "C:\\Program Files\\Maven\\apache-maven-3.9.12\\bin\\mvn.cmd";
+            List<String> cmd = new ArrayList<>();
+            cmd.add(mavenCommand());
+            cmd.add("-Dstyle.color=never");
+            cmd.addAll(args);
+            cmd.addAll(cds.mavenArgs);
+            cmd.add("test");
 
-            ProcessBuilder pb = new ProcessBuilder(
-                    mvnCmd,
-                    "-Dstyle.color=never",
-                    "test"
-            );
+            BuildWorkerPool pool = BuildWorkerPool.shared(logger);
+            String output = pool == null ? null : pool.run(root, cmd, token);
+            if (output == null) {
+                output = token.isCancelled() ? "" : runHere(root, cmd);
+            }
+
+            if (token.isCancelled()) {
+                logger.accept("Maven run cancelled: " + token.reason());
+                return output + "\nMaven run cancelled: " + token.reason();
+            }
+            return output;
+
+        } catch (IOException e) {
+            return "Error running Maven: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Maven run interrupted";
+        } finally {
+            long millis = System.currentTimeMillis() - start;
+            CdsArchives.shared(logger).finish(cds, millis);
+            AgentEvents.mavenFinished(millis);
+        }
+    }
 
-            pb.directory(root.toFile());
-            pb.redirectErrorStream(true);
+    @SuppressWarnings("try")
+    private String runHere(Path root, List<String> cmd) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(cmd);
 
-            Process p = pb.start();
+        pb.directory(root.toFile());
+        pb.redirectErrorStream(true);
 
+        Process p = pb.start();
+
+        StringBuilder sb = new StringBuilder();
+        try (CancellationToken.Registration ignored = token.onCancel(() -> kill(p))) {
             BufferedReader reader = new BufferedReader(
                     new InputStreamReader(p.getInputStream())
             );
-
-            StringBuilder sb = new StringBuilder();
             reader.lines().forEach(l -> sb.append(l).append("\n"));
+        } catch (UncheckedIOException e) {
+            // Stream closed because the process was killed.
+        }
 
-            return sb.toString();
+        p.waitFor();
+        return sb.toString();
+    }
 
-        } catch (IOException e) {
-            return "Error running Maven: " + e.getMessage();
-        }
+    /**
+     * The configured maven.command, else the Maven installation this tool was
+     * written against if it exists, else mvn from the PATH.
+     */
+    static String mavenCommand() {
+        String configured = Settings.get("maven.command", null);
+        if (configured != null) return configured;
+        if (new File(MVN).exists()) return MVN;
+        return System.getProperty("os.name").toLowerCase().contains("win") ? "mvn.cmd" : "mvn";
     }
 
+    /**
+     * Kills Maven together with forked JVMs such as Surefire.
+     */
+    private void kill(Process p) {
+        p.descendants().forEach(ProcessHandle::destroyForcibly);
+        p.destroyForcibly();
+    }
 
     public boolean testsGreen(String output) {
         return output.contains("BUILD SUCCESS");
@@ -0,0 +1,70 @@
+package nl.mihaly.main;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Decides which model, with which options, handles the next iteration.
+ *
+ * The implementation is chosen with the setting models.policy (a class name);
+ * the default is ErrorClassModelPolicy.
+ */
+public interface ModelPolicy {
+
+    /**
+     * Picks the model for the next candidate.
+     *
+     * @param result            the last test result, or null before the first run
+     * @param stagnantIterations how many iterations in a row failed with the same failures
+     */
+    Choice choose(TestResult result, int stagnantIterations);
+
+    /**
+     * Model for the final attempt after the iteration limit.
+     */
+    Choice fallback();
+
+    /**
+     * Model for pom.xml dependency fixes.
+     */
+    Choice pomFix();
+
+    /**
+     * A model with generation options and the name of the route that picked it.
+     */
+    class Choice {
+        public final String route;
+        public final String model;
+        public final Map<String, Object> options;
+
+        public Choice(String route, String model, Map<String, Object> options) {
+            this.route = route;
+            this.model = model;
+            this.options = Collections.unmodifiableMap(new LinkedHashMap<>(options));
+        }
+
+        public Choice(String route, String model) {
+            this(route, model, Map.of());
+        }
+
+        @Override
+        public String toString() {
+            return route + " -> " + model + (options.isEmpty() ? "" : " " + options);
+        }
+    }
+
+    /**
+     * Creates the policy configured in the settings.
+     */
+    static ModelPolicy fromSettings(Consumer<String> logger) {
+        String name = Settings.get("models.policy", ErrorClassModelPolicy.class.getName());
+        try {
+            return (ModelPolicy) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            logger.accept("Cannot create model policy " + name + ", using default: " + e.getMessage());
+            return new ErrorClassModelPolicy();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package nl.mihaly.main;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * Decides which of the waiting model calls of all jobs (agents) in the JVM is
+ * sent next, so concurrent runs do not make the GPU thrash between models.
+ *
+ * - Calls wait in one queue per model. While calls for the model that was sent
+ *   last are waiting, they go first, up to scheduler.maxBatch in a row, so the
+ *   model stays loaded.
+ * - Between jobs the GPU time is shared by weight: each job's virtual time
+ *   grows with the time its calls took divided by its weight, and the waiting
+ *   call of the job with the lowest virtual time is picked. A job whose tests
+ *   are close to green (scheduler.nearGreenFailures failing tests or fewer)
+ *   counts double.
+ * - A call waiting longer than scheduler.maxWaitSeconds is sent next regardless,
+ *   so a slow fallback model cannot be starved, nor starve the others for long.
+ *
+ * At most as many calls as OllamaRouter has slots are in flight. Queue depth
+ * and wait times per model are available through describe().
+ */
+public class ModelScheduler {
+
+    /**
+     * The work done once it is the job's turn.
+     */
+    public interface Call<T> {
+        T run() throws Exception;
+    }
+
+    private static ModelScheduler shared;
+
+    private final Consumer<String> logger;
+    private final int slots;
+    private final int maxBatch;
+    private final long maxWaitMillis;
+    private final int nearGreenFailures;
+
+    // Guarded by this.
+    private final Map<String, Deque<Request>> queues = new TreeMap<>();
+    private final Map<String, Stats> stats = new TreeMap<>();
+    private int running;
+    private String loadedModel;
+    private int batch;
+    private double virtualTime;
+
+    /**
+     * A source of model calls with a share of the GPU, usually one agent run.
+     */
+    public static class Job {
+        final String name;
+        volatile double weight;
+        volatile int failing = -1;
+
+        // Guarded by the scheduler.
+        double virtualTime;
+        int active;
+
+        Job(String name, double weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        /**
+         * The number of failing tests after the last iteration, or -1 if unknown.
+         */
+        public void setFailing(int failing) {
+            this.failing = failing;
+        }
+
+        public void setWeight(double weight) {
+            this.weight = Math.max(0.01, weight);
+        }
+
+        public String name() {
+            return name;
+        }
+    }
+
+    private static class Request {
+        final Job job;
+        final String model;
+        final long queuedAt = System.currentTimeMillis();
+        boolean granted;
+
+        Request(Job job, String model) {
+            this.job = job;
+            this.model = model;
+        }
+    }
+
+    private static class Stats {
+        long calls;
+        long totalWait;
+        long maxWait;
+        int maxDepth;
+        int switches;
+    }
+
+    ModelScheduler(Consumer<String> logger, int slots, int maxBatch, long maxWaitMillis, int nearGreenFailures) {
+        this.logger = logger;
+        this.slots = Math.max(1, slots);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxWaitMillis = maxWaitMillis;
+        this.nearGreenFailures = nearGreenFailures;
+    }
+
+    /**
+     * Returns the scheduler shared by all agents, created from the settings on first use.
+     */
+    public static synchronized ModelScheduler shared(Consumer<String> logger) {
+        if (shared == null) {
+            shared = new ModelScheduler(
+                    logger,
+                    OllamaRouter.shared(logger).capacity(),
+                    Settings.getInt("scheduler.maxBatch", 4),
+                    Settings.getInt("scheduler.maxWaitSeconds", 180) * 1000L,
+                    Settings.getInt("scheduler.nearGreenFailures", 2)
+            );
+        }
+        return shared;
+    }
+
+    /**
+     * Creates a job. Its weight is scheduler.weight.&lt;name&gt; if set, else 1.
+     */
+    public Job newJob(String name) {
+        return new Job(name, Math.max(0.01, Settings.getDouble("scheduler.weight." + name, 1.0)));
+    }
+
+    /**
+     * Waits for the job's turn, runs the call and accounts the time it took.
+     */
+    @SuppressWarnings("try")
+    public <T> T run(Job job, String model, CancellationToken token, Call<T> work) throws Exception {
+        Request request = new Request(job, model);
+        enqueue(request);
+
+        try (CancellationToken.Registration ignored = token.onCancel(this::wakeUp)) {
+            awaitTurn(request, token);
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            return work.run();
+        } finally {
+            finish(job, System.currentTimeMillis() - start);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // QUEUEING
+    // ------------------------------------------------------------
+
+    private synchronized void enqueue(Request request) {
+        Job job = request.job;
+        if (job.active++ == 0) {
+            // A job that was idle starts at the current virtual time, it does not get credit for idling.
+            job.virtualTime = Math.max(job.virtualTime, virtualTime);
+        }
+
+        Deque<Request> queue = queues.computeIfAbsent(request.model, m -> new ArrayDeque<>());
+        queue.add(request);
+
+        Stats s = stats.computeIfAbsent(request.model, m -> new Stats());
+        s.maxDepth = Math.max(s.maxDepth, queue.size());
+
+        dispatch();
+    }
+
+    private synchronized void awaitTurn(Request request, CancellationToken token) throws InterruptedException {
+        try {
+            while (!request.granted) {
+                if (token.isCancelled()) throw new CancellationException(token.reason());
+                // Timed, so a call that exceeds maxWait is picked up even when nothing finishes.
+                wait(1000);
+                dispatch();
+            }
+        } catch (InterruptedException | CancellationException e) {
+            if (request.granted) {
+                running--;
+            } else {
+                queues.get(request.model).remove(request);
+            }
+            request.job.active--;
+            dispatch();
+            throw e;
+        }
+    }
+
+    private synchronized void finish(Job job, long millis) {
+        running--;
+        job.active--;
+        job.virtualTime += millis / effectiveWeight(job);
+        dispatch();
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    /**
+     * Grants free slots to the next requests.
+     */
+    private void dispatch() {
+        boolean granted = false;
+        while (running < slots) {
+            Request next = next();
+            if (next == null) break;
+
+            queues.get(next.model).remove(next);
+
+            if (next.model.equals(loadedModel)) {
+                batch++;
+            } else {
+                if (loadedModel != null) stats.get(next.model).switches++;
+                loadedModel = next.model;
+                batch = 1;
+            }
+
+            long wait = System.currentTimeMillis() - next.queuedAt;
+            Stats s = stats.get(next.model);
+            s.calls++;
+            s.totalWait += wait;
+            s.maxWait = Math.max(s.maxWait, wait);
+            AgentEvents.modelScheduled(next.model, wait, depth());
+            if (wait >= 10_000) {
+                logger.accept("Model call of " + next.job.name + " for " + next.model + " waited " + wait
+                        + " ms in the scheduler queue");
+            }
+
+            virtualTime = Math.max(virtualTime, next.job.virtualTime);
+            next.granted = true;
+            running++;
+            granted = true;
+        }
+        if (granted) notifyAll();
+    }
+
+    private Request next() {
+        long now = System.currentTimeMillis();
+
+        // 1. Calls that have waited too long, oldest first.
+        Request overdue = null;
+        for (Deque<Request> queue : queues.values()) {
+            Request head = queue.peek();
+            if (head != null && now - head.queuedAt >= maxWaitMillis
+                    && (overdue == null || head.queuedAt < overdue.queuedAt)) {
+                overdue = head;
+            }
+        }
+        if (overdue != null) return overdue;
+
+        // 2. The loaded model, unless its batch is used up and other models wait.
+        Deque<Request> loaded = loadedModel == null ? null : queues.get(loadedModel);
+        if (loaded != null && !loaded.isEmpty() && (batch < maxBatch || !othersWaiting())) {
+            return fairest(loaded);
+        }
+
+        // 3. Otherwise the fairest call of another model.
+        Request best = null;
+        for (Map.Entry<String, Deque<Request>> e : queues.entrySet()) {
+            if (e.getKey().equals(loadedModel)) continue;
+            Request r = fairest(e.getValue());
+            if (r != null && (best == null || r.job.virtualTime < best.job.virtualTime)) best = r;
+        }
+        return best;
+    }
+
+    private Request fairest(Deque<Request> queue) {
+        Request best = null;
+        for (Request r : queue) {
+            if (best == null || r.job.virtualTime < best.job.virtualTime) best = r;
+        }
+        return best;
+    }
+
+    private boolean othersWaiting() {
+        for (Map.Entry<String, Deque<Request>> e : queues.entrySet()) {
+            if (!e.getKey().equals(loadedModel) && !e.getValue().isEmpty()) return true;
+        }
+        return false;
+    }
+
+    private int depth() {
+        int depth = 0;
+        for (Deque<Request> queue : queues.values()) depth += queue.size();
+        return depth;
+    }
+
+    private double effectiveWeight(Job job) {
+        int failing = job.failing;
+        boolean nearGreen = failing > 0 && failing <= nearGreenFailures;
+        return job.weight * (nearGreen ? 2 : 1);
+    }
+
+    // ------------------------------------------------------------
+    // METRICS
+    // ------------------------------------------------------------
+
+    /**
+     * Returns one status line per model, for logging.
+     */
+    public synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("running=%d/%d queued=%d loaded=%s", running, slots, depth(), loadedModel));
+        for (Map.Entry<String, Stats> e : stats.entrySet()) {
+            Stats s = e.getValue();
+            Deque<Request> queue = queues.get(e.getKey());
+            lines.add(String.format("%s queued=%d maxQueued=%d calls=%d avgWait=%dms maxWait=%dms switchesTo=%d",
+                    e.getKey(), queue == null ? 0 : queue.size(), s.maxDepth, s.calls,
+                    s.calls == 0 ? 0 : s.totalWait / s.calls, s.maxWait, s.switches));
+        }
+        return lines;
+    }
+}
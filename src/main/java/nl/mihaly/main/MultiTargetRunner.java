@@ -0,0 +1,422 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates several collaborating classes in one run.
+ *
+ * Builds a dependency graph from the test sources: a class depends on every
+ * other target that its own tests reference. Leaf classes are generated first
+ * and independent branches run in parallel, each in its own scratch copy of
+ * the project that only contains the tests of finished classes and of the
+ * class itself. After all targets are done the whole project is tested once,
+ * also in a scratch copy; only classes whose own tests fail, or whose
+ * dependencies' tests fail, are generated again.
+ */
+public class MultiTargetRunner {
+
+    private static final Pattern ERROR_FILE = Pattern.compile("(?m)^\\[ERROR]\\s+(.+?\\.java):\\[\\d+,\\d+]");
+
+    private final Consumer<String> logger;
+    private final Path projectRoot;
+    private final List<ClassSpec> specs;
+    private final int parallelism;
+    private final CancellationToken token;
+
+    private final Map<ClassSpec, Set<ClassSpec>> dependencies = new LinkedHashMap<>();
+    private final Map<ClassSpec, Set<Path>> ownTests = new LinkedHashMap<>();
+
+    /**
+     * One class to generate.
+     */
+    public static class ClassSpec {
+        public final String packageName;
+        public final String className;
+        public final String specification;
+
+        public ClassSpec(String packageName, String className, String specification) {
+            this.packageName = packageName == null ? "" : packageName;
+            this.className = className;
+            this.specification = specification;
+        }
+
+        Path mainFile() {
+            String pkgPath = packageName.isBlank() ? "" : packageName.replace('.', '/') + "/";
+            return Path.of("src/main/java/" + pkgPath + className + ".java");
+        }
+
+        @Override
+        public String toString() {
+            return packageName.isBlank() ? className : packageName + "." + className;
+        }
+    }
+
+    public MultiTargetRunner(Consumer<String> logger, Path projectRoot, List<ClassSpec> specs) {
+        this(logger, projectRoot, specs, new CancellationToken());
+    }
+
+    /**
+     * Creates a runner whose agents and builds all stop when the token is cancelled.
+     */
+    public MultiTargetRunner(Consumer<String> logger, Path projectRoot, List<ClassSpec> specs,
+                             CancellationToken token) {
+        this.logger = logger;
+        this.token = token;
+        this.projectRoot = projectRoot;
+        this.specs = List.copyOf(specs);
+        this.parallelism = Settings.getInt("multi.parallelism",
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Generates all classes. Returns true if all tests of the project are green at the end.
+     */
+    public boolean run() {
+        buildGraph();
+
+        Set<ClassSpec> todo = new LinkedHashSet<>(specs);
+        int rounds = Settings.getInt("multi.rounds", 2);
+
+        for (int round = 1; round <= rounds && !todo.isEmpty(); round++) {
+            logger.accept("=== Multi-target round " + round + ": " + todo + " ===");
+            generate(todo);
+            if (token.isCancelled()) break;
+
+            String output = testProject();
+            TestResult result = TestResult.parse(output);
+            logger.accept("Project after round " + round + ": " + result.summary());
+
+            if (result.green) {
+                logger.accept("All classes green.");
+                return true;
+            }
+
+            todo = toRegenerate(output, result);
+            if (todo.isEmpty()) {
+                logger.accept("Failures cannot be attributed to any target class.");
+                return false;
+            }
+        }
+
+        if (token.isCancelled()) {
+            logger.accept("Multi-target run cancelled: " + token.reason());
+            return false;
+        }
+        logger.accept("Multi-target run finished with failing classes: " + todo);
+        return false;
+    }
+
+    // ------------------------------------------------------------
+    // GRAPH
+    // ------------------------------------------------------------
+
+    void buildGraph() {
+        ProjectIndex index = ProjectIndex.forProject(projectRoot, logger);
+
+        for (ClassSpec spec : specs) {
+            Map<Path, String> tests = index.testsReferencing(spec.packageName, spec.className);
+
+            // Own tests are those named after the class; otherwise every test that references it.
+            Set<Path> own = new LinkedHashSet<>();
+            for (Path test : tests.keySet()) {
+                if (isOwnTest(test, spec.className)) own.add(test);
+            }
+            if (own.isEmpty()) own.addAll(tests.keySet());
+            ownTests.put(spec, own);
+
+            Set<ClassSpec> deps = new LinkedHashSet<>();
+            for (Path test : own) {
+                deps.addAll(referencedTargets(index.source(test)));
+            }
+            deps.remove(spec);
+            dependencies.put(spec, deps);
+        }
+
+        breakCycles();
+
+        for (ClassSpec spec : specs) {
+            logger.accept("Target " + spec + " depends on " + dependencies.get(spec)
+                    + ", own tests: " + ownTests.get(spec).size());
+        }
+    }
+
+    /**
+     * True for OrderTest, OrderTests and OrderIT, but not for OrderParserTest.
+     */
+    static boolean isOwnTest(Path test, String className) {
+        String name = test.getFileName().toString();
+        return name.equals(className + "Test.java")
+                || name.equals(className + "Tests.java")
+                || name.equals(className + "IT.java");
+    }
+
+    Set<ClassSpec> dependenciesOf(ClassSpec spec) {
+        return dependencies.get(spec);
+    }
+
+    Set<Path> ownTestsOf(ClassSpec spec) {
+        return ownTests.get(spec);
+    }
+
+    private Set<ClassSpec> referencedTargets(String source) {
+        Set<ClassSpec> result = new LinkedHashSet<>();
+        if (source == null) return result;
+
+        for (ClassSpec spec : specs) {
+            if (Pattern.compile("\\b" + Pattern.quote(spec.className) + "\\b").matcher(source).find()) {
+                result.add(spec);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes edges that close a cycle, so there is always a class to start with.
+     */
+    private void breakCycles() {
+        Set<ClassSpec> visited = new HashSet<>();
+        Set<ClassSpec> onStack = new HashSet<>();
+        for (ClassSpec spec : specs) {
+            dfs(spec, visited, onStack);
+        }
+    }
+
+    private void dfs(ClassSpec spec, Set<ClassSpec> visited, Set<ClassSpec> onStack) {
+        if (!visited.add(spec)) return;
+        onStack.add(spec);
+
+        for (Iterator<ClassSpec> it = dependencies.get(spec).iterator(); it.hasNext(); ) {
+            ClassSpec dep = it.next();
+            if (onStack.contains(dep)) {
+                logger.accept("Dependency cycle " + spec + " -> " + dep + "; ignoring this edge.");
+                it.remove();
+            } else {
+                dfs(dep, visited, onStack);
+            }
+        }
+        onStack.remove(spec);
+    }
+
+    // ------------------------------------------------------------
+    // SCHEDULING
+    // ------------------------------------------------------------
+
+    /**
+     * Generates the given targets in dependency order, independent ones in parallel.
+     * Targets not in the set count as done.
+     */
+    private void generate(Set<ClassSpec> targets) {
+        Set<ClassSpec> done = ConcurrentHashMap.newKeySet();
+        for (ClassSpec spec : specs) {
+            if (!targets.contains(spec)) done.add(spec);
+        }
+
+        Set<ClassSpec> pending = new LinkedHashSet<>(targets);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        CompletionService<ClassSpec> completion = new ExecutorCompletionService<>(executor);
+        int running = 0;
+
+        try {
+            while (!pending.isEmpty() || running > 0) {
+                if (token.isCancelled()) pending.clear();
+
+                for (Iterator<ClassSpec> it = pending.iterator(); it.hasNext(); ) {
+                    ClassSpec spec = it.next();
+                    if (done.containsAll(dependencies.get(spec))) {
+                        it.remove();
+                        Set<ClassSpec> finished = Set.copyOf(done);
+                        completion.submit(() -> {
+                            try {
+                                generateOne(spec, finished);
+                            } catch (IOException e) {
+                                logger.accept("Generating " + spec + " failed: " + e.getMessage());
+                            }
+                            return spec;
+                        });
+                        running++;
+                    }
+                }
+
+                if (running == 0) break;
+
+                try {
+                    done.add(completion.take().get());
+                } catch (ExecutionException e) {
+                    logger.accept("Target generation failed: " + e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                running--;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the agent for one class in a scratch copy that contains only tests of
+     * finished classes, tests of this class and tests unrelated to any target.
+     */
+    private void generateOne(ClassSpec spec, Set<ClassSpec> finished) throws IOException {
+        Consumer<String> log = msg -> logger.accept("[" + spec.className + "] " + msg);
+        ProjectIndex index = ProjectIndex.forProject(projectRoot, logger);
+
+        Set<ClassSpec> allowed = new HashSet<>(finished);
+        allowed.add(spec);
+
+        try (ScratchProject scratch = ScratchProject.create(projectRoot,
+                test -> allowed.containsAll(referencedTargets(index.source(test))), log)) {
+
+            CodingAIAgent agent = new CodingAIAgent(log, spec.specification, spec.className, spec.packageName, token);
+            boolean green = agent.runInWorkspace(scratch.root(), projectRoot);
+            log.accept(green ? "Class green in isolation." : "Class not green in isolation.");
+
+            if (Files.exists(scratch.root().resolve(spec.mainFile()))) {
+                scratch.syncBack(spec.mainFile());
+            }
+        }
+    }
+
+    /**
+     * Runs all tests of the project in a scratch copy, so the build leaves no
+     * target/ output behind in the user's tree.
+     */
+    private String testProject() {
+        MavenRunner maven = new MavenRunner(logger, token);
+        if (!Settings.getBoolean("workspace.scratch", true)) {
+            return maven.runTests(projectRoot);
+        }
+        try (ScratchProject scratch = ScratchProject.create(projectRoot, logger)) {
+            return maven.runTests(scratch.root());
+        } catch (IOException e) {
+            logger.accept("Cannot create scratch copy, testing the project itself: " + e.getMessage());
+            return maven.runTests(projectRoot);
+        }
+    }
+
+    /**
+     * Finds the targets whose own tests fail or whose main file does not compile,
+     * plus every target that depends on one of them.
+     */
+    private Set<ClassSpec> toRegenerate(String output, TestResult result) {
+        Set<ClassSpec> failing = new LinkedHashSet<>();
+
+        for (String test : result.failingTests) {
+            String testClass = test.substring(0, Math.max(0, test.lastIndexOf('.')));
+            String simple = testClass.substring(testClass.lastIndexOf('.') + 1);
+            for (ClassSpec spec : specs) {
+                for (Path own : ownTests.get(spec)) {
+                    if (own.getFileName().toString().equals(simple + ".java")) failing.add(spec);
+                }
+            }
+        }
+
+        Matcher m = ERROR_FILE.matcher(output);
+        while (m.find()) {
+            Path file;
+            try {
+                file = Path.of(m.group(1).trim());
+            } catch (InvalidPathException e) {
+                continue;
+            }
+            // The build ran in a scratch copy: compare the path below the project root, segment by segment.
+            for (ClassSpec spec : specs) {
+                if (file.endsWith(spec.mainFile())) failing.add(spec);
+                for (Path own : ownTests.get(spec)) {
+                    if (file.endsWith(projectRoot.toAbsolutePath().normalize().relativize(own))) failing.add(spec);
+                }
+            }
+        }
+
+        Set<ClassSpec> affected = new LinkedHashSet<>(failing);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (ClassSpec spec : specs) {
+                if (!affected.contains(spec) && !Collections.disjoint(dependencies.get(spec), affected)) {
+                    changed |= affected.add(spec);
+                }
+            }
+        }
+        return affected;
+    }
+
+    // ------------------------------------------------------------
+    // SPEC FILE
+    // ------------------------------------------------------------
+
+    /**
+     * Reads class specs from a text file. Each class starts with a line
+     * "=== package.ClassName", followed by its specification.
+     */
+    public static List<ClassSpec> readSpecs(Path file) throws IOException {
+        List<ClassSpec> result = new ArrayList<>();
+        String name = null;
+        StringBuilder spec = new StringBuilder();
+
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith("===")) {
+                if (name != null) result.add(toSpec(name, spec.toString()));
+                name = line.substring(3).trim();
+                spec.setLength(0);
+            } else if (name != null) {
+                spec.append(line).append('\n');
+            }
+        }
+        if (name != null) result.add(toSpec(name, spec.toString()));
+        return result;
+    }
+
+    private static ClassSpec toSpec(String qualifiedName, String specification) {
+        int dot = qualifiedName.lastIndexOf('.');
+        String pkg = dot < 0 ? "" : qualifiedName.substring(0, dot);
+        return new ClassSpec(pkg, qualifiedName.substring(dot + 1), specification.trim());
+    }
+
+    /**
+     * Usage: MultiTargetRunner [--deadline &lt;duration&gt;] &lt;projectRoot&gt; &lt;specFile&gt;
+     *
+     * The duration is e.g. "90s", "30m" or "2h". Ctrl-C also stops the run and
+     * releases the Ollama request and Maven processes in flight.
+     */
+    public static void main(String[] args) throws IOException {
+        CancellationToken token = new CancellationToken();
+        List<String> positional = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--deadline") && i + 1 < args.length) {
+                Duration deadline = CancellationToken.parseDuration(args[++i]);
+                if (deadline == null) {
+                    System.err.println("Invalid deadline: " + args[i]);
+                    System.exit(2);
+                }
+                token.setDeadline(deadline);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+
+        if (positional.size() != 2) {
+            System.err.println("Usage: MultiTargetRunner [--deadline <duration>] <projectRoot> <specFile>");
+            System.exit(2);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> token.cancel("Interrupted")));
+
+        Path root = Path.of(positional.get(0));
+        List<ClassSpec> specs = readSpecs(Path.of(positional.get(1)));
+        boolean green = new MultiTargetRunner(System.out::println, root, specs, token).run();
+        System.exit(green ? 0 : 1);
+    }
+}
@@ -5,62 +5,237 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 /**
- * Sends prompts to the local Ollama server and returns model responses.
+ * Sends prompts to Ollama and returns model responses.
  *
+ * Requests wait for their turn in the shared ModelScheduler and are then
+ * routed over the configured Ollama servers by OllamaRouter.
+ * Cancelling the run's CancellationToken aborts the request in flight.
+ * An answer cut off by num_predict is requested again with a larger budget
+ * (see GenerationBudget).
  * Handles HTTP communication, JSON construction, and decoding of escaped content
  * so that Java and XML (pom.xml) arrive in a clean, usable form.
  */
 public class OllamaClient {
 
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
     private final Consumer<String> logger;
+    private final OllamaRouter router;
+    private final CancellationToken token;
+    private final ModelScheduler scheduler;
+    private final ModelScheduler.Job job;
+    private final GenerationBudget budget;
+    private final int truncationRetries;
 
     public OllamaClient(Consumer<String> logger) {
+        this(logger, new CancellationToken());
+    }
+
+    public OllamaClient(Consumer<String> logger, CancellationToken token) {
+        this(logger, token, null);
+    }
+
+    /**
+     * Creates a client whose calls are scheduled as part of the given job,
+     * so they share its fair share of the GPU. A null job gets a job of its own.
+     */
+    public OllamaClient(Consumer<String> logger, CancellationToken token, ModelScheduler.Job job) {
         this.logger = logger;
+        this.router = OllamaRouter.shared(logger);
+        this.token = token;
+        this.scheduler = Settings.getBoolean("scheduler.enabled", true) ? ModelScheduler.shared(logger) : null;
+        this.job = job != null || scheduler == null ? job : scheduler.newJob("client");
+        this.budget = GenerationBudget.shared(logger);
+        this.truncationRetries = Settings.getInt("generation.truncationRetries", 1);
     }
 
     public String call(String model, String prompt) {
+        return call(model, prompt, Map.of());
+    }
+
+    /**
+     * Calls the model with Ollama generation options such as temperature.
+     */
+    public String call(String model, String prompt, Map<String, Object> options) {
         try {
-            HttpClient client = HttpClient.newHttpClient();
+            String body = request(model, prompt, options, null);
 
-            String safePrompt = jsonEscape(prompt);
+            // Only the answer itself: other envelope fields (thinking, metadata) must not reach the extractor.
+            String response = Json.stringField(body, "response");
+            String decoded = response != null ? decodeMarkupEscapes(response) : decodeAllEscapes(body);
 
-            String json = """
-                {
-                  "model": "%s",
-                  "prompt": "%s",
-                  "stream": false
-                }
-                """.formatted(model, safePrompt);
+            logger.accept("Decoded Ollama response:");
+            logger.accept(decoded);
+
+            return decoded;
+
+        } catch (CancellationException e) {
+            String msg = "Ollama call cancelled: " + token.reason();
+            logger.accept(msg);
+            return msg;
+        } catch (Exception e) {
+            String msg = "Error calling Ollama: " + e.getMessage();
+            logger.accept(msg);
+            return msg;
+        }
+    }
+
+    /**
+     * Calls the model with a JSON schema as Ollama "format", so the answer is a
+     * JSON document matching the schema. Returns that document, properly
+     * unescaped from the response envelope, or null on errors.
+     */
+    public String callStructured(String model, String prompt, Map<String, Object> options, String schema) {
+        try {
+            String body = request(model, prompt, options, schema);
+            String document = Json.stringField(body, "response");
+
+            logger.accept("Structured Ollama response:");
+            logger.accept(document);
+
+            return document;
+
+        } catch (CancellationException e) {
+            logger.accept("Ollama call cancelled: " + token.reason());
+            return null;
+        } catch (Exception e) {
+            logger.accept("Error calling Ollama: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String request(String model, String prompt, Map<String, Object> options, String format)
+            throws Exception {
+        Map<String, Object> current = options;
+        for (int attempt = 0; ; attempt++) {
+            String body = request(model, prompt, current, format, attempt);
 
+            String response = Json.stringField(body, "response");
+            boolean truncated = "length".equals(Json.stringField(body, "done_reason"));
+            budget.record(model, prompt.length(), Json.longField(body, "prompt_eval_count"),
+                    response == null ? 0 : response.length(), Json.longField(body, "eval_count"), truncated);
+
+            if (!truncated || attempt >= truncationRetries || token.isCancelled()) return body;
+
+            // Only a cut-off answer earns a larger budget.
+            Map<String, Object> grown = budget.grow(model, prompt, current);
+            if (grown == null) return body;
+            logger.accept("Answer of " + model + " was cut off at num_predict " + current.get("num_predict")
+                    + ", retrying with " + grown.get("num_predict"));
+            current = grown;
+        }
+    }
+
+    private String request(String model, String prompt, Map<String, Object> options, String format, int attempt)
+            throws Exception {
+        String safePrompt = jsonEscape(prompt);
+
+        String json = """
+            {
+              "model": "%s",
+              "prompt": "%s",
+              "stream": false%s%s
+            }
+            """.formatted(model, safePrompt, optionsJson(options),
+                format == null ? "" : ",\n  \"format\": " + format);
+
+        if (attempt == 0) {
             logger.accept("Sending to Ollama:");
             logger.accept(json);
+        }
 
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create("http://localhost:11434/api/generate"))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
-                    .build();
+        String body = scheduler == null
+                ? timedRoute(model, json)
+                : scheduler.run(job, model, token, () -> timedRoute(model, json));
 
-            HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
+        logger.accept("Raw Ollama response:");
+        logger.accept(body);
 
-            logger.accept("Raw Ollama response:");
-            logger.accept(resp.body());
+        return body;
+    }
 
-            String decoded = decodeAllEscapes(resp.body());
+    private String timedRoute(String model, String json) throws Exception {
+        AgentEvents.modelStarted(model);
+        long start = System.currentTimeMillis();
+        String body = null;
+        try {
+            body = router.route(model, baseUrl -> send(baseUrl, json), token);
+            return body;
+        } finally {
+            // Also on failure and cancellation, so listeners never see a request hang.
+            long millis = System.currentTimeMillis() - start;
+            if (body == null) {
+                AgentEvents.modelFinished(model, millis, -1, -1, -1);
+            } else {
+                AgentEvents.modelFinished(model, millis,
+                        Json.longField(body, "prompt_eval_count"),
+                        Json.longField(body, "eval_count"),
+                        Json.longField(body, "eval_duration"));
+            }
+        }
+    }
 
-            logger.accept("Decoded Ollama response:");
-            logger.accept(decoded);
+    /**
+     * Posts the request to one Ollama server. Non-200 responses are errors,
+     * so the router can fail over to another endpoint.
+     */
+    @SuppressWarnings("try")
+    private String send(String baseUrl, String json) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/api/generate"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
 
-            return decoded;
+        // Sent asynchronously so a cancel can abort the exchange and free the server.
+        CompletableFuture<HttpResponse<String>> future = CLIENT.sendAsync(req, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> resp;
+        try (CancellationToken.Registration ignored = token.onCancel(() -> future.cancel(true))) {
+            resp = future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
 
-        } catch (Exception e) {
-            String msg = "Error calling Ollama: " + e.getMessage();
-            logger.accept(msg);
-            return msg;
+        if (resp.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + resp.statusCode() + " from " + baseUrl + ": " + resp.body());
         }
+
+        return resp.body();
+    }
+
+    private String optionsJson(Map<String, Object> options) {
+        if (options == null || options.isEmpty()) return "";
+
+        StringBuilder sb = new StringBuilder(",\n  \"options\": {");
+        boolean first = true;
+        for (Map.Entry<String, Object> e : options.entrySet()) {
+            if (!first) sb.append(", ");
+            first = false;
+
+            sb.append('"').append(jsonEscape(e.getKey())).append("\": ");
+            Object v = e.getValue();
+            if (v instanceof Number || v instanceof Boolean) {
+                sb.append(v);
+            } else if (v instanceof List<?> list) {
+                sb.append('[');
+                for (int i = 0; i < list.size(); i++) {
+                    if (i > 0) sb.append(", ");
+                    sb.append('"').append(jsonEscape(String.valueOf(list.get(i)))).append('"');
+                }
+                sb.append(']');
+            } else {
+                sb.append('"').append(jsonEscape(String.valueOf(v))).append('"');
+            }
+        }
+        return sb.append('}').toString();
     }
 
     /**
@@ -91,13 +266,15 @@ public class OllamaClient {
         s = decodeUnicodeEscapes(s);
 
         // 3. HTML/XML escapes
-        s = s.replace("&lt;", "<")
+        return decodeMarkupEscapes(s);
+    }
+
+    private String decodeMarkupEscapes(String s) {
+        return s.replace("&lt;", "<")
                 .replace("&gt;", ">")
                 .replace("&amp;", "&")
                 .replace("&quot;", "\"")
                 .replace("&apos;", "'");
-
-        return s;
     }
 
     private String decodeUnicodeEscapes(String input) {
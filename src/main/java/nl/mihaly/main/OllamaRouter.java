@@ -0,0 +1,317 @@
+package nl.mihaly.main;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Spreads model calls over one or more Ollama servers.
+ *
+ * Endpoints come from the setting ollama.endpoints, a comma-separated list of
+ * base URLs. An entry may end with |N to allow N concurrent requests on that
+ * endpoint (default ollama.maxConcurrent, 1). Each call goes to an endpoint
+ * that has the model, is healthy and has a free slot, choosing the one with the
+ * fewest outstanding requests (or the lowest expected latency when
+ * ollama.balancing=latency). Failed calls are retried on the next endpoint.
+ *
+ * One router is shared by all agents in the JVM.
+ */
+public class OllamaRouter {
+
+    /**
+     * A single request against one endpoint's base URL.
+     */
+    public interface Call {
+        String send(String baseUrl) throws Exception;
+    }
+
+    private static final Pattern MODEL_NAME = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]+)\"");
+    private static final long UNHEALTHY_COOLDOWN_MS = 10_000;
+
+    private static OllamaRouter shared;
+
+    private final Consumer<String> logger;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final boolean latencyAware;
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    OllamaRouter(Consumer<String> logger, List<String> endpointSpecs, int defaultLimit, boolean latencyAware) {
+        this.logger = logger;
+        this.latencyAware = latencyAware;
+
+        for (String spec : endpointSpecs) {
+            String url = spec;
+            int limit = defaultLimit;
+
+            int bar = spec.indexOf('|');
+            if (bar >= 0) {
+                url = spec.substring(0, bar).trim();
+                try {
+                    limit = Integer.parseInt(spec.substring(bar + 1).trim());
+                } catch (NumberFormatException e) {
+                    logger.accept("Invalid concurrency limit in endpoint '" + spec + "', using " + defaultLimit);
+                }
+            }
+
+            endpoints.add(new Endpoint(url.replaceAll("/+$", ""), Math.max(1, limit)));
+        }
+    }
+
+    /**
+     * Returns the router shared by all agents, created from the settings on first use.
+     */
+    public static synchronized OllamaRouter shared(Consumer<String> logger) {
+        if (shared == null) {
+            shared = new OllamaRouter(
+                    logger,
+                    Settings.getList("ollama.endpoints", "http://localhost:11434"),
+                    Settings.getInt("ollama.maxConcurrent", 1),
+                    "latency".equalsIgnoreCase(Settings.get("ollama.balancing", "least-outstanding"))
+            );
+            shared.startHealthChecks(Settings.getInt("ollama.healthCheckSeconds", 30));
+        }
+        return shared;
+    }
+
+    /**
+     * The number of requests that can be in flight over all endpoints.
+     */
+    public int capacity() {
+        int capacity = 0;
+        for (Endpoint e : endpoints) capacity += e.limit;
+        return capacity;
+    }
+
+    /**
+     * Runs the call on the best available endpoint for the model, failing over
+     * to the other endpoints on errors. Throws the last error if all endpoints fail.
+     */
+    public String route(String model, Call call) throws Exception {
+        return route(model, call, new CancellationToken());
+    }
+
+    /**
+     * Like route(model, call), but stops waiting for a free endpoint and does
+     * not fail over once the token is cancelled.
+     */
+    @SuppressWarnings("try")
+    public String route(String model, Call call, CancellationToken token) throws Exception {
+        Set<Endpoint> tried = new HashSet<>();
+        Exception lastError = null;
+
+        try (CancellationToken.Registration ignored = token.onCancel(this::wakeUp)) {
+            while (tried.size() < endpoints.size()) {
+                Endpoint endpoint = acquire(model, tried, token);
+                if (endpoint == null) break;
+
+                tried.add(endpoint);
+                long start = System.nanoTime();
+
+                try {
+                    String result = call.send(endpoint.url);
+                    endpoint.recordSuccess((System.nanoTime() - start) / 1_000_000);
+                    return result;
+                } catch (InterruptedException | CancellationException e) {
+                    throw e;
+                } catch (Exception e) {
+                    if (token.isCancelled()) throw new CancellationException(token.reason());
+                    lastError = e;
+                    endpoint.recordFailure();
+                    logger.accept("Ollama endpoint " + endpoint.url + " failed: " + e.getMessage()
+                            + (tried.size() < endpoints.size() ? " - trying next endpoint" : ""));
+                } finally {
+                    release(endpoint);
+                }
+            }
+        }
+
+        throw lastError != null ? lastError : new IllegalStateException("No Ollama endpoint available for " + model);
+    }
+
+    /**
+     * Blocks until an eligible endpoint has a free slot and reserves it.
+     */
+    private synchronized Endpoint acquire(String model, Set<Endpoint> tried, CancellationToken token)
+            throws InterruptedException {
+        while (true) {
+            if (token.isCancelled()) throw new CancellationException(token.reason());
+
+            List<Endpoint> eligible = eligible(model, tried);
+            if (eligible.isEmpty()) return null;
+
+            Endpoint best = null;
+            for (Endpoint e : eligible) {
+                if (e.outstanding >= e.limit) continue;
+                if (best == null || score(e) < score(best)) best = e;
+            }
+
+            if (best != null) {
+                best.outstanding++;
+                return best;
+            }
+
+            wait(1000);
+        }
+    }
+
+    private synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    private synchronized void release(Endpoint endpoint) {
+        endpoint.outstanding--;
+        notifyAll();
+    }
+
+    /**
+     * Endpoints not yet tried for this call that are healthy and serve the model.
+     * Model lists are only used when at least one endpoint reports the model;
+     * health is ignored when every remaining endpoint is unhealthy.
+     */
+    private List<Endpoint> eligible(String model, Set<Endpoint> tried) {
+        List<Endpoint> remaining = new ArrayList<>();
+        for (Endpoint e : endpoints) {
+            if (!tried.contains(e)) remaining.add(e);
+        }
+
+        List<Endpoint> withModel = new ArrayList<>();
+        for (Endpoint e : remaining) {
+            if (e.hasModel(model)) withModel.add(e);
+        }
+        if (!withModel.isEmpty()) remaining = withModel;
+
+        List<Endpoint> healthy = new ArrayList<>();
+        for (Endpoint e : remaining) {
+            if (e.isHealthy()) healthy.add(e);
+        }
+        return healthy.isEmpty() ? remaining : healthy;
+    }
+
+    private double score(Endpoint e) {
+        if (latencyAware) {
+            // Expected completion time if queued behind the current requests.
+            return (e.outstanding + 1) * Math.max(1.0, e.latencyMs);
+        }
+        return e.outstanding + e.latencyMs / 1_000_000.0;
+    }
+
+    // ------------------------------------------------------------
+    // HEALTH CHECKS
+    // ------------------------------------------------------------
+
+    private void startHealthChecks(int intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ollama-health");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkAll, 0, Math.max(1, intervalSeconds), TimeUnit.SECONDS);
+    }
+
+    void checkAll() {
+        for (Endpoint e : endpoints) {
+            check(e);
+        }
+    }
+
+    private void check(Endpoint endpoint) {
+        try {
+            HttpRequest req = HttpRequest.newBuilder()
+                    .uri(URI.create(endpoint.url + "/api/tags"))
+                    .timeout(Duration.ofSeconds(5))
+                    .GET()
+                    .build();
+
+            HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
+            if (resp.statusCode() != 200) {
+                throw new IllegalStateException("HTTP " + resp.statusCode());
+            }
+
+            Set<String> models = new HashSet<>();
+            Matcher m = MODEL_NAME.matcher(resp.body());
+            while (m.find()) {
+                models.add(m.group(1));
+            }
+
+            boolean wasHealthy = endpoint.isHealthy();
+            endpoint.markHealthy(models);
+            if (!wasHealthy) {
+                logger.accept("Ollama endpoint " + endpoint.url + " is healthy, models: " + models);
+            }
+        } catch (Exception ex) {
+            if (endpoint.isHealthy()) {
+                logger.accept("Ollama endpoint " + endpoint.url + " failed health check: " + ex.getMessage());
+            }
+            endpoint.recordFailure();
+        }
+    }
+
+    /**
+     * Returns one status line per endpoint, for logging.
+     */
+    public synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Endpoint e : endpoints) {
+            lines.add(String.format("%s healthy=%s outstanding=%d/%d latency=%.0fms models=%s",
+                    e.url, e.isHealthy(), e.outstanding, e.limit, e.latencyMs, e.models));
+        }
+        return lines;
+    }
+
+    // ------------------------------------------------------------
+    // ENDPOINT
+    // ------------------------------------------------------------
+
+    private static class Endpoint {
+        final String url;
+        final int limit;
+
+        // Guarded by the router's monitor.
+        int outstanding;
+
+        volatile double latencyMs;
+        volatile long unhealthyUntil;
+        volatile Set<String> models = Set.of();
+
+        Endpoint(String url, int limit) {
+            this.url = url;
+            this.limit = limit;
+        }
+
+        boolean isHealthy() {
+            return System.currentTimeMillis() >= unhealthyUntil;
+        }
+
+        boolean hasModel(String model) {
+            Set<String> known = models;
+            return known.contains(model) || known.contains(model + ":latest");
+        }
+
+        void markHealthy(Set<String> models) {
+            this.models = models;
+            this.unhealthyUntil = 0;
+        }
+
+        void recordSuccess(long millis) {
+            // Exponentially weighted moving average of the call latency.
+            latencyMs = latencyMs == 0 ? millis : 0.8 * latencyMs + 0.2 * millis;
+            unhealthyUntil = 0;
+        }
+
+        void recordFailure() {
+            unhealthyUntil = System.currentTimeMillis() + UNHEALTHY_COOLDOWN_MS;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs large JUnit 5 test suites in parallel, without changing the project's pom.
+ *
+ * JUnit Platform reads its configuration from system properties, and Surefire
+ * passes Maven's -D properties on to the test JVM, so the parallel settings are
+ * just extra Maven arguments. They are only added when:
+ *
+ * - tests.parallel is on and the project uses JUnit Jupiter,
+ * - the selected tests have at least tests.parallelThreshold cases
+ *   (parameterized and repeated tests counted by their arguments), and
+ * - none of them looks unsafe to run concurrently: mutable static fields,
+ *   changing JVM-wide state (system properties, System.out, default locale or
+ *   time zone), ordered test methods, a shared test instance, fixed file paths
+ *   or timeouts. Tests with @Execution, @Isolated or @ResourceLock are left
+ *   to JUnit.
+ *
+ * If a parallel run fails with symptoms of a race, MavenRunner repeats it
+ * sequentially. Only if the sequential run passes was it a race; those tests
+ * then stay sequential, also in later runs' scratch copies: they are
+ * recognized by the project's poms and the test files' paths. Reasons are
+ * reported once per set of tests.
+ */
+public class ParallelTests {
+
+    private static final Pattern JUNIT5 = Pattern.compile("junit-jupiter|junit-bom");
+    private static final Pattern TEST = Pattern.compile("@Test\\b");
+    private static final Pattern REPEATED = Pattern.compile("@RepeatedTest\\(\\s*(?:value\\s*=\\s*)?(\\d+)");
+    private static final Pattern PARAMETERIZED = Pattern.compile("(?s)@ParameterizedTest\\b(.*?)\\bvoid\\b");
+    private static final Pattern VALUE_SOURCE = Pattern.compile("(?s)@ValueSource\\(.*?\\{(.*?)}");
+    private static final Pattern CSV_SOURCE = Pattern.compile("(?s)@CsvSource\\((.*?)\\)\\s*(?:@|\\w|\\z)");
+    private static final Pattern STRING = Pattern.compile("\"(?:[^\"\\\\]|\\\\.)*\"");
+
+    private static final Pattern EXPLICIT = Pattern.compile("@(Execution|Isolated|ResourceLock)\\b");
+    private static final Map<String, Pattern> UNSAFE = new LinkedHashMap<>();
+
+    static {
+        UNSAFE.put("changes JVM-wide state", Pattern.compile(
+                "System\\.(setProperty|clearProperty|setOut|setErr|setIn|setSecurityManager)\\s*\\("
+                        + "|Locale\\.setDefault|TimeZone\\.setDefault|Thread\\.setDefaultUncaughtExceptionHandler"));
+        UNSAFE.put("orders its test methods", Pattern.compile("@TestMethodOrder\\b|@Order\\("));
+        UNSAFE.put("shares one test instance", Pattern.compile("@TestInstance\\(\\s*(TestInstance\\.)?Lifecycle\\.PER_CLASS"));
+        UNSAFE.put("uses fixed file paths", Pattern.compile("new\\s+File\\(\\s*\"|Paths?\\.(get|of)\\(\\s*\""));
+        UNSAFE.put("depends on timing", Pattern.compile("assertTimeout(Preemptively)?\\s*\\(|@Timeout\\b"));
+    }
+
+    /**
+     * Symptoms in the output of a parallel run that point at tests interfering.
+     */
+    private static final List<String> RACE_SYMPTOMS = List.of(
+            "ConcurrentModificationException",
+            "IllegalMonitorStateException",
+            "Deadlock",
+            "There was a timeout in the fork");
+
+    private static ParallelTests shared;
+
+    private final Consumer<String> logger;
+    private final boolean enabled;
+    private final int threshold;
+    private final int parallelism;
+    // Keyed by poms and test paths: builds run in scratch copies, so the root differs per run.
+    private final Set<String> sequentialTests = new HashSet<>();
+    private final Set<String> reported = new HashSet<>();
+
+    private ParallelTests(Consumer<String> logger) {
+        this.logger = logger;
+        this.enabled = Settings.getBoolean("tests.parallel", true);
+        this.threshold = Settings.getInt("tests.parallelThreshold", 50);
+        this.parallelism = Settings.getInt("tests.parallelism", Runtime.getRuntime().availableProcessors());
+    }
+
+    public static synchronized ParallelTests shared(Consumer<String> logger) {
+        if (shared == null) {
+            shared = new ParallelTests(logger);
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the Maven arguments that run the tests of the class in parallel,
+     * or an empty list if they should run sequentially.
+     */
+    public List<String> arguments(Path root, String packageName, String className) {
+        if (!enabled || parallelism < 2) return List.of();
+        if (!usesJupiter(root)) return List.of();
+
+        LeanBuild lean = LeanBuild.shared(logger);
+        List<Path> tests = lean.testFiles(root, packageName, className);
+        String project = projectKey(root);
+        synchronized (this) {
+            if (sequentialTests.contains(testSetKey(root, project, tests))) return List.of();
+        }
+
+        int cases = 0;
+        Map<String, List<String>> unsafe = new TreeMap<>();
+        StringBuilder key = new StringBuilder(project);
+        for (Path test : tests) {
+            String source = read(test);
+            key.append(source);
+            cases += countCases(source);
+
+            List<String> reasons = unsafeReasons(source);
+            if (!reasons.isEmpty()) unsafe.put(test.getFileName().toString(), reasons);
+        }
+
+        if (cases < threshold) return List.of();
+
+        // The class under test can share state between tests as well.
+        Path owner = className == null ? null : lean.owningModule(root, packageName, className);
+        if (owner != null) {
+            String pkgPath = packageName == null || packageName.isBlank() ? "" : packageName.replace('.', '/') + "/";
+            Path main = owner.resolve("src/main/java/" + pkgPath + className + ".java");
+            if (Files.exists(main) && hasMutableStatics(read(main))) {
+                unsafe.put(className + ".java", List.of("has mutable static fields"));
+            }
+        }
+
+        boolean first;
+        synchronized (this) {
+            first = reported.add(ProjectIndex.sha256(key.toString()));
+        }
+
+        if (!unsafe.isEmpty()) {
+            if (first) {
+                logger.accept(cases + " test cases, but running them sequentially; not safe in parallel:");
+                unsafe.forEach((file, reasons) -> logger.accept("  " + file + " " + String.join(", ", reasons)));
+            }
+            return List.of();
+        }
+
+        if (first) {
+            logger.accept("Running " + cases + " test cases in parallel on " + parallelism + " threads.");
+        }
+        List<String> args = new ArrayList<>(List.of(
+                "-Djunit.jupiter.execution.parallel.enabled=true",
+                "-Djunit.jupiter.execution.parallel.mode.default=concurrent",
+                "-Djunit.jupiter.execution.parallel.mode.classes.default=concurrent",
+                "-Djunit.jupiter.execution.parallel.config.strategy=fixed",
+                "-Djunit.jupiter.execution.parallel.config.fixed.parallelism=" + parallelism));
+
+        // One reused fork runs everything concurrently; more forks only add JVM start-ups.
+        String forkCount = Settings.get("tests.forkCount", null);
+        if (forkCount != null) {
+            args.add("-DforkCount=" + forkCount);
+            args.add("-DreuseForks=true");
+        }
+        return args;
+    }
+
+    /**
+     * True if the output of a parallel run suggests tests interfered with each
+     * other; the run should then be repeated sequentially.
+     */
+    public boolean raceSuspected(String output) {
+        if (output.contains("BUILD SUCCESS")) return false;
+
+        for (String symptom : RACE_SYMPTOMS) {
+            if (output.contains(symptom)) {
+                logger.accept("Parallel test run failed with " + symptom + "; repeating it sequentially.");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes the result of the sequential repeat of a suspected race. If it
+     * passed, the tests of the class run sequentially from now on.
+     */
+    public void sequentialResult(Path root, String packageName, String className, String output) {
+        if (!output.contains("BUILD SUCCESS")) {
+            logger.accept("The tests fail sequentially as well; not a race, staying parallel.");
+            return;
+        }
+        List<Path> tests = LeanBuild.shared(logger).testFiles(root, packageName, className);
+        String key = testSetKey(root, projectKey(root), tests);
+        synchronized (this) {
+            sequentialTests.add(key);
+        }
+        logger.accept("The tests pass sequentially; running them sequentially from now on.");
+    }
+
+    // ------------------------------------------------------------
+    // ANALYSIS
+    // ------------------------------------------------------------
+
+    /**
+     * Estimated number of test cases in a test source.
+     */
+    static int countCases(String source) {
+        int cases = 0;
+
+        Matcher m = TEST.matcher(source);
+        while (m.find()) cases++;
+
+        m = REPEATED.matcher(source);
+        while (m.find()) cases += Integer.parseInt(m.group(1));
+
+        m = PARAMETERIZED.matcher(source);
+        while (m.find()) {
+            String sources = m.group(1);
+            Matcher values = VALUE_SOURCE.matcher(sources);
+            Matcher csv = CSV_SOURCE.matcher(sources);
+            if (values.find()) {
+                cases += values.group(1).split(",").length;
+            } else if (csv.find()) {
+                Matcher s = STRING.matcher(csv.group(1));
+                int rows = 0;
+                while (s.find()) rows++;
+                cases += Math.max(1, rows);
+            } else {
+                // @MethodSource, @EnumSource, @CsvFileSource...: unknown, assume a typical table.
+                cases += 10;
+            }
+        }
+        return cases;
+    }
+
+    static List<String> unsafeReasons(String source) {
+        if (EXPLICIT.matcher(source).find()) return List.of();
+
+        List<String> reasons = new ArrayList<>();
+        if (hasMutableStatics(source)) reasons.add("has mutable static fields");
+        for (Map.Entry<String, Pattern> e : UNSAFE.entrySet()) {
+            if (e.getValue().matcher(source).find()) reasons.add(e.getKey());
+        }
+        return reasons;
+    }
+
+    /**
+     * True if the source declares a static field that is not final.
+     */
+    static boolean hasMutableStatics(String source) {
+        for (String line : source.split("\n")) {
+            String t = line.trim();
+            if (t.startsWith("import") || t.startsWith("//") || t.startsWith("*")) continue;
+            if (!(" " + t).contains(" static ") || t.contains(" final ")) continue;
+            // A parenthesis before any initializer is a method.
+            int paren = t.indexOf('(');
+            int assign = t.indexOf('=');
+            if (paren >= 0 && (assign < 0 || paren < assign)) continue;
+            if (t.contains(" class ") || t.contains(" interface ") || t.contains(" enum ") || t.contains(" record ")) continue;
+            if (t.endsWith(";") || t.contains("=")) return true;
+        }
+        return false;
+    }
+
+    private String projectKey(Path root) {
+        StringBuilder poms = new StringBuilder();
+        for (Path module : LeanBuild.shared(logger).modules(root)) {
+            poms.append(read(module.resolve("pom.xml")));
+        }
+        return ProjectIndex.sha256(poms.toString());
+    }
+
+    private static String testSetKey(Path root, String project, List<Path> tests) {
+        Path base = root.toAbsolutePath().normalize();
+        List<String> paths = new ArrayList<>();
+        for (Path test : tests) {
+            paths.add(base.relativize(test.toAbsolutePath().normalize()).toString());
+        }
+        Collections.sort(paths);
+        return ProjectIndex.sha256(project + paths);
+    }
+
+    private boolean usesJupiter(Path root) {
+        for (Path module : LeanBuild.shared(logger).modules(root)) {
+            if (JUNIT5.matcher(read(module.resolve("pom.xml"))).find()) return true;
+        }
+        return false;
+    }
+
+    private String read(Path file) {
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package nl.mihaly.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies incremental edits returned by the model to the current class source.
+ *
+ * Supports two formats:
+ * - a unified diff in a ```diff block
+ * - one or more complete method declarations in ```java blocks, which replace
+ *   the method with the same name (or are added when the name is new)
+ *
+ * Every hunk and method is checked against the current source. If anything does
+ * not match, the whole edit is rejected (null is returned) so the caller can
+ * fall back to a full rewrite.
+ */
+public class PatchApplier {
+
+    private static final Pattern HUNK_HEADER =
+            Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@.*$");
+
+    private static final Pattern METHOD_NAME =
+            Pattern.compile("(?m)^[ \\t]*(?:@\\w+(?:\\([^)]*\\))?\\s+)*"
+                    + "(?:(?:public|protected|private|static|final|synchronized|abstract|native|default)\\s+)*"
+                    + "(?:<[^>]+>\\s+)?(?!(?:return|new|throw|else|case)\\b)[\\w.<>\\[\\],? ]+?\\s+(\\w+)\\s*\\(");
+
+    private final Consumer<String> logger;
+
+    public PatchApplier(Consumer<String> logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Applies the edit in the AI response to the current source.
+     * Returns the new source, or null if the edit is missing or conflicts.
+     */
+    public String apply(String currentSource, String aiResponse) {
+        if (currentSource == null || aiResponse == null) return null;
+
+        String diff = fencedBlock(aiResponse, "```diff");
+        if (diff != null) {
+            return applyUnifiedDiff(currentSource, diff);
+        }
+
+        List<String> javaBlocks = fencedBlocks(aiResponse, "```java");
+        if (javaBlocks.isEmpty()) {
+            logger.accept("Edit response contains no ```diff or ```java block.");
+            return null;
+        }
+
+        String result = currentSource;
+        for (String block : javaBlocks) {
+            result = replaceMethod(result, block);
+            if (result == null) return null;
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------
+    // UNIFIED DIFF
+    // ------------------------------------------------------------
+
+    String applyUnifiedDiff(String source, String diff) {
+        List<String> lines = new ArrayList<>(List.of(source.split("\n", -1)));
+        String[] diffLines = diff.split("\n", -1);
+
+        int offset = 0;
+        int i = 0;
+        int hunks = 0;
+
+        while (i < diffLines.length) {
+            Matcher header = HUNK_HEADER.matcher(diffLines[i]);
+            if (!header.matches()) {
+                i++;
+                continue;
+            }
+
+            int expectedStart = Integer.parseInt(header.group(1)) - 1;
+            i++;
+
+            List<String> oldBlock = new ArrayList<>();
+            List<String> newBlock = new ArrayList<>();
+
+            while (i < diffLines.length && !diffLines[i].startsWith("@@")) {
+                String l = diffLines[i];
+                if (l.startsWith("---") || l.startsWith("+++")) {
+                    break;
+                } else if (l.startsWith("+")) {
+                    newBlock.add(l.substring(1));
+                } else if (l.startsWith("-")) {
+                    oldBlock.add(l.substring(1));
+                } else if (l.startsWith(" ")) {
+                    oldBlock.add(l.substring(1));
+                    newBlock.add(l.substring(1));
+                } else if (l.isEmpty()) {
+                    // Models often strip the single space of empty context lines.
+                    oldBlock.add("");
+                    newBlock.add("");
+                } else if (!l.startsWith("\\")) {
+                    break;
+                }
+                i++;
+            }
+
+            trimTrailingEmpty(oldBlock, newBlock);
+
+            int at = locate(lines, oldBlock, expectedStart + offset);
+            if (at < 0) {
+                logger.accept("Patch conflict: hunk " + (hunks + 1) + " does not match the current class.");
+                return null;
+            }
+
+            for (int k = 0; k < oldBlock.size(); k++) {
+                lines.remove(at);
+            }
+            lines.addAll(at, newBlock);
+
+            offset = at - expectedStart + newBlock.size() - oldBlock.size();
+            hunks++;
+        }
+
+        if (hunks == 0) {
+            logger.accept("Diff block contains no hunks.");
+            return null;
+        }
+
+        logger.accept("Applied " + hunks + " diff hunk(s).");
+        return String.join("\n", lines);
+    }
+
+    private void trimTrailingEmpty(List<String> oldBlock, List<String> newBlock) {
+        while (!oldBlock.isEmpty() && !newBlock.isEmpty()
+                && oldBlock.get(oldBlock.size() - 1).isEmpty()
+                && newBlock.get(newBlock.size() - 1).isEmpty()) {
+            oldBlock.remove(oldBlock.size() - 1);
+            newBlock.remove(newBlock.size() - 1);
+        }
+    }
+
+    /**
+     * Finds the hunk's old lines in the source, preferring the position closest
+     * to the expected line. Trailing whitespace is ignored. Returns -1 if the
+     * block occurs nowhere, or if it occurs more than once and none of the
+     * occurrences is at the expected position.
+     */
+    private int locate(List<String> lines, List<String> block, int expected) {
+        if (block.isEmpty()) {
+            return Math.max(0, Math.min(expected, lines.size()));
+        }
+
+        List<Integer> hits = new ArrayList<>();
+        for (int start = 0; start + block.size() <= lines.size(); start++) {
+            if (matchesAt(lines, block, start)) {
+                hits.add(start);
+            }
+        }
+
+        if (hits.isEmpty()) return -1;
+        if (hits.size() == 1 || hits.contains(expected)) {
+            return hits.contains(expected) ? expected : hits.get(0);
+        }
+        return -1;
+    }
+
+    private boolean matchesAt(List<String> lines, List<String> block, int start) {
+        for (int k = 0; k < block.size(); k++) {
+            if (!lines.get(start + k).stripTrailing().equals(block.get(k).stripTrailing())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------
+    // METHOD REPLACEMENT
+    // ------------------------------------------------------------
+
+    String replaceMethod(String source, String method) {
+        Matcher m = METHOD_NAME.matcher(method);
+        if (!m.find()) {
+            logger.accept("Edit block is not a method declaration.");
+            return null;
+        }
+        String name = m.group(1);
+
+        List<int[]> existing = findMethods(source, name);
+
+        if (existing.size() > 1) {
+            logger.accept("Patch conflict: method " + name + " is overloaded, cannot replace it safely.");
+            return null;
+        }
+
+        if (existing.isEmpty()) {
+            int close = source.lastIndexOf('}');
+            if (close < 0) return null;
+            logger.accept("Adding new method: " + name);
+            return source.substring(0, close) + "\n" + indent(method) + "\n" + source.substring(close);
+        }
+
+        int[] range = existing.get(0);
+        logger.accept("Replacing method: " + name);
+        return source.substring(0, range[0]) + indent(method) + source.substring(range[1]);
+    }
+
+    /**
+     * Returns [start, end) ranges of all method declarations with the given name.
+     */
+    private List<int[]> findMethods(String source, String name) {
+        List<int[]> result = new ArrayList<>();
+        Matcher m = METHOD_NAME.matcher(source);
+
+        while (m.find()) {
+            if (!m.group(1).equals(name)) continue;
+
+            int bodyStart = source.indexOf('{', m.end());
+            int semicolon = source.indexOf(';', m.end());
+            if (bodyStart < 0 || (semicolon >= 0 && semicolon < bodyStart)) continue;
+
+            int end = matchingBrace(source, bodyStart);
+            if (end < 0) continue;
+
+            result.add(new int[]{m.start(), end + 1});
+        }
+        return result;
+    }
+
+    private int matchingBrace(String s, int open) {
+        int depth = 0;
+        boolean inString = false;
+        boolean inChar = false;
+
+        for (int i = open; i < s.length(); i++) {
+            char c = s.charAt(i);
+            char prev = i > 0 ? s.charAt(i - 1) : 0;
+
+            if (inString) {
+                if (c == '"' && prev != '\\') inString = false;
+            } else if (inChar) {
+                if (c == '\'' && prev != '\\') inChar = false;
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '\'') {
+                inChar = true;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) return i;
+            }
+        }
+        return -1;
+    }
+
+    private String indent(String method) {
+        String trimmed = method.strip();
+        if (method.startsWith("    ")) return method.stripTrailing();
+
+        StringBuilder sb = new StringBuilder();
+        for (String line : trimmed.split("\n", -1)) {
+            sb.append(line.isEmpty() ? "" : "    ").append(line).append("\n");
+        }
+        return sb.toString().stripTrailing();
+    }
+
+    // ------------------------------------------------------------
+    // FENCES
+    // ------------------------------------------------------------
+
+    private String fencedBlock(String text, String fence) {
+        List<String> blocks = fencedBlocks(text, fence);
+        return blocks.isEmpty() ? null : blocks.get(0);
+    }
+
+    private List<String> fencedBlocks(String text, String fence) {
+        List<String> blocks = new ArrayList<>();
+        int from = 0;
+
+        while (true) {
+            int start = text.indexOf(fence, from);
+            if (start == -1) break;
+
+            int contentStart = text.indexOf('\n', start);
+            if (contentStart == -1) break;
+
+            int end = text.indexOf("```", contentStart);
+            if (end == -1) break;
+
+            String block = text.substring(contentStart + 1, end);
+            if (!block.isBlank()) blocks.add(block);
+            from = end + 3;
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,422 @@
+package nl.mihaly.main;
+
+import com.sun.source.tree.*;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Looks for known performance anti-patterns in a candidate class: tests going
+ * green says nothing about how the code behaves on real data.
+ *
+ * The source is only parsed with the JDK compiler tree API, not compiled, so
+ * the checks work on declared types and names:
+ *
+ * - string-concat-in-loop: a String built with += (or s = s + ...) in a loop
+ * - boxing-in-loop: a boxed local (Integer, Long...) updated in a loop, or a
+ *   collection of boxed values (List&lt;Integer&gt;...) read or written in a loop
+ * - remove-head: remove(0) or add(0, x) on a List, which shifts all elements
+ * - regex-recompiled: Pattern.compile with a constant outside a static field,
+ *   or String.matches/replaceAll/replaceFirst/split with a regex in a loop
+ *
+ * With lint.performance=warn the findings are shown in the next prompt as
+ * optional; with fix, a green class with findings is sent back for up to
+ * lint.maxFixRounds rounds before it is accepted (see CodingAIAgent).
+ */
+public class PerformanceLint {
+
+    public enum Mode {
+        OFF, WARN, FIX
+    }
+
+    /**
+     * One anti-pattern at a line and column of the source.
+     */
+    public static class Finding {
+        public final long line;
+        public final long column;
+        public final String rule;
+        public final String message;
+
+        Finding(long line, long column, String rule, String message) {
+            this.line = line;
+            this.column = column;
+            this.rule = rule;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ":" + column + " [" + rule + "] " + message;
+        }
+    }
+
+    private static final Set<String> BOXED =
+            Set.of("Integer", "Long", "Double", "Float", "Short", "Byte", "Character", "Boolean");
+    private static final Pattern BOXED_COLLECTION = Pattern.compile(
+            "(java\\.util\\.)?(List|ArrayList|LinkedList|Collection|Set|HashSet|LinkedHashSet|TreeSet|"
+                    + "Queue|Deque|ArrayDeque|PriorityQueue|Map|HashMap|LinkedHashMap|TreeMap)"
+                    + "<.*\\b(Integer|Long|Double|Float|Short|Byte|Character)\\b.*>");
+    private static final Pattern LIST = Pattern.compile("(java\\.util\\.)?(List|ArrayList)(<.*>)?");
+    private static final Set<String> COLLECTION_ACCESS =
+            Set.of("add", "get", "set", "put", "contains", "containsKey", "getOrDefault", "merge", "remove", "offer");
+    private static final Set<String> STRING_REGEX = Set.of("matches", "replaceAll", "replaceFirst", "split");
+    // String.split takes a fast path without a Pattern for one plain character.
+    private static final String REGEX_META = ".$|()[{^?*+\\";
+
+    private static boolean compilerMissingReported;
+
+    private final Consumer<String> logger;
+    private final Mode mode;
+    private final int maxFixRounds;
+
+    public PerformanceLint(Consumer<String> logger) {
+        this.logger = logger;
+        this.mode = parseMode(Settings.get("lint.performance", "warn"));
+        this.maxFixRounds = Settings.getInt("lint.maxFixRounds", 2);
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public int maxFixRounds() {
+        return maxFixRounds;
+    }
+
+    /**
+     * Returns the findings for a source, in source order. Returns an empty list
+     * if linting is off, the source is null or no Java compiler is available.
+     */
+    public List<Finding> check(String source) {
+        if (mode == Mode.OFF || source == null) return List.of();
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            reportCompilerMissing();
+            return List.of();
+        }
+
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Candidate.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        try {
+            // Syntax errors are the compiler's business; whatever parses is still checked.
+            JavacTask task = (JavacTask) compiler.getTask(null, null, d -> { }, List.of("-proc:none"), null, List.of(file));
+            List<Finding> findings = new ArrayList<>();
+            for (CompilationUnitTree unit : task.parse()) {
+                new Checker(unit, Trees.instance(task).getSourcePositions(), findings).scan(unit, null);
+            }
+            findings.sort(Comparator.comparingLong((Finding f) -> f.line).thenComparingLong(f -> f.column));
+            return findings;
+        } catch (IOException | RuntimeException e) {
+            logger.accept("Performance lint failed: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Appends the findings for the current class to the test output shown in a
+     * prompt, as optional improvements.
+     */
+    public String annotate(String currentSource, String testOutput) {
+        List<Finding> findings = check(currentSource);
+        if (findings.isEmpty()) return testOutput;
+        return testOutput + Texts.PERFORMANCE_FINDINGS.formatted(format(findings));
+    }
+
+    /**
+     * The test output of a green class, preceded by the request to fix its findings.
+     */
+    public String fixRequest(List<Finding> findings, String testOutput) {
+        return Texts.PERFORMANCE_FIX.formatted(format(findings)) + testOutput;
+    }
+
+    public static String format(List<Finding> findings) {
+        StringBuilder sb = new StringBuilder();
+        for (Finding f : findings) {
+            sb.append("- ").append(f).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static Mode parseMode(String value) {
+        try {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Mode.WARN;
+        }
+    }
+
+    private void reportCompilerMissing() {
+        synchronized (PerformanceLint.class) {
+            if (compilerMissingReported) return;
+            compilerMissingReported = true;
+        }
+        logger.accept("No Java compiler available (running on a JRE?); performance lint disabled.");
+    }
+
+    // ------------------------------------------------------------
+    // CHECKS
+    // ------------------------------------------------------------
+
+    private static class Checker extends TreePathScanner<Void, Void> {
+
+        private final CompilationUnitTree unit;
+        private final SourcePositions positions;
+        private final List<Finding> findings;
+        // Declared types by variable name; names are rarely reused with another type in one class.
+        private final Map<String, String> types = new HashMap<>();
+        private final Set<String> reported = new HashSet<>();
+        private int loops;
+        private int methods;
+
+        Checker(CompilationUnitTree unit, SourcePositions positions, List<Finding> findings) {
+            this.unit = unit;
+            this.positions = positions;
+            this.findings = findings;
+        }
+
+        // --- context ---
+
+        @Override
+        public Void visitMethod(MethodTree node, Void unused) {
+            for (VariableTree p : node.getParameters()) declare(p);
+            methods++;
+            try {
+                return super.visitMethod(node, unused);
+            } finally {
+                methods--;
+            }
+        }
+
+        @Override
+        public Void visitLambdaExpression(LambdaExpressionTree node, Void unused) {
+            methods++;
+            try {
+                return super.visitLambdaExpression(node, unused);
+            } finally {
+                methods--;
+            }
+        }
+
+        @Override
+        public Void visitVariable(VariableTree node, Void unused) {
+            declare(node);
+            return super.visitVariable(node, unused);
+        }
+
+        @Override
+        public Void visitForLoop(ForLoopTree node, Void unused) {
+            scan(node.getInitializer(), unused);
+            inLoop(node.getCondition(), node.getUpdate(), node.getStatement());
+            return null;
+        }
+
+        @Override
+        public Void visitEnhancedForLoop(EnhancedForLoopTree node, Void unused) {
+            scan(node.getVariable(), unused);
+            scan(node.getExpression(), unused);
+            inLoop(node.getStatement());
+            return null;
+        }
+
+        @Override
+        public Void visitWhileLoop(WhileLoopTree node, Void unused) {
+            inLoop(node.getCondition(), node.getStatement());
+            return null;
+        }
+
+        @Override
+        public Void visitDoWhileLoop(DoWhileLoopTree node, Void unused) {
+            inLoop(node.getStatement(), node.getCondition());
+            return null;
+        }
+
+        private void inLoop(Object... parts) {
+            loops++;
+            try {
+                for (Object part : parts) {
+                    if (part instanceof Tree tree) scan(tree, null);
+                    else if (part instanceof Iterable<?> trees) scan(castTrees(trees), null);
+                }
+            } finally {
+                loops--;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Iterable<? extends Tree> castTrees(Iterable<?> trees) {
+            return (Iterable<? extends Tree>) trees;
+        }
+
+        // --- string-concat-in-loop, boxing-in-loop ---
+
+        @Override
+        public Void visitCompoundAssignment(CompoundAssignmentTree node, Void unused) {
+            if (loops > 0 && node.getVariable() instanceof IdentifierTree id) {
+                String name = id.getName().toString();
+                String type = types.get(name);
+                if ("String".equals(type) && node.getKind() == Tree.Kind.PLUS_ASSIGNMENT) {
+                    concatInLoop(node, name);
+                } else if (BOXED.contains(type)) {
+                    boxedInLoop(node, name, type);
+                }
+            }
+            return super.visitCompoundAssignment(node, unused);
+        }
+
+        @Override
+        public Void visitAssignment(AssignmentTree node, Void unused) {
+            if (loops > 0 && node.getVariable() instanceof IdentifierTree id
+                    && node.getExpression() instanceof BinaryTree sum && sum.getKind() == Tree.Kind.PLUS) {
+                String name = id.getName().toString();
+                String type = types.get(name);
+                if (startsWith(sum, name)) {
+                    if ("String".equals(type)) concatInLoop(node, name);
+                    else if (BOXED.contains(type)) boxedInLoop(node, name, type);
+                }
+            }
+            return super.visitAssignment(node, unused);
+        }
+
+        @Override
+        public Void visitUnary(UnaryTree node, Void unused) {
+            if (loops > 0 && node.getExpression() instanceof IdentifierTree id) {
+                String name = id.getName().toString();
+                String type = types.get(name);
+                if (BOXED.contains(type)) boxedInLoop(node, name, type);
+            }
+            return super.visitUnary(node, unused);
+        }
+
+        private void concatInLoop(Tree node, String name) {
+            report(node, "string-concat-in-loop", name,
+                    "String " + name + " is concatenated in a loop, copying it every time; use a StringBuilder.");
+        }
+
+        private void boxedInLoop(Tree node, String name, String type) {
+            report(node, "boxing-in-loop", name,
+                    type + " " + name + " is updated in a loop, boxing a new object every time; use the primitive type.");
+        }
+
+        // --- method calls: boxed collections, remove-head, regex ---
+
+        @Override
+        public Void visitMethodInvocation(MethodInvocationTree node, Void unused) {
+            if (node.getMethodSelect() instanceof MemberSelectTree select) {
+                String method = select.getIdentifier().toString();
+                List<? extends ExpressionTree> args = node.getArguments();
+                String receiver = select.getExpression() instanceof IdentifierTree id ? id.getName().toString() : null;
+                String type = receiver == null ? null : types.get(receiver);
+
+                if (loops > 0 && type != null && COLLECTION_ACCESS.contains(method)
+                        && BOXED_COLLECTION.matcher(type).matches()) {
+                    report(node, "boxing-in-loop", receiver, type + " " + receiver + "." + method
+                            + "(...) in a loop boxes or unboxes every element; use a primitive array"
+                            + " or keep the values in primitive locals.");
+                }
+
+                if (type != null && LIST.matcher(type).matches()) {
+                    if (method.equals("remove") && args.size() == 1 && isZero(args.get(0))) {
+                        report(node, "remove-head", receiver, receiver + ".remove(0) shifts every element of the "
+                                + "list; use an ArrayDeque and poll() for a queue.");
+                    } else if (method.equals("add") && args.size() == 2 && isZero(args.get(0))) {
+                        report(node, "remove-head", receiver, receiver + ".add(0, ...) shifts every element of the "
+                                + "list; use an ArrayDeque and addFirst(), or add at the end and reverse once.");
+                    }
+                }
+
+                if (method.equals("compile") && isPattern(select.getExpression()) && methods > 0) {
+                    if (loops > 0) {
+                        report(node, "regex-recompiled", null,
+                                "Pattern.compile in a loop compiles the regex on every pass; compile it once.");
+                    } else if (!args.isEmpty() && isConstant(args.get(0))) {
+                        report(node, "regex-recompiled", null, "Pattern.compile of a constant regex runs on "
+                                + "every call; keep the Pattern in a static final field.");
+                    }
+                } else if (method.equals("matches") && isPattern(select.getExpression()) && loops > 0) {
+                    report(node, "regex-recompiled", null,
+                            "Pattern.matches in a loop compiles the regex on every pass; compile it once.");
+                } else if (loops > 0 && STRING_REGEX.contains(method) && !args.isEmpty()
+                        && (type == null || type.equals("String")) && isRegex(method, args.get(0))) {
+                    report(node, "regex-recompiled", null, "String." + method + " in a loop compiles its regex "
+                            + "on every pass; use a static final Pattern.");
+                }
+            }
+            return super.visitMethodInvocation(node, unused);
+        }
+
+        // --- helpers ---
+
+        private void declare(VariableTree node) {
+            String type = null;
+            if (node.getType() != null) {
+                type = node.getType().toString();
+            }
+            if ((type == null || type.equals("var")) && node.getInitializer() != null) {
+                ExpressionTree init = node.getInitializer();
+                if (init instanceof NewClassTree n) type = n.getIdentifier().toString();
+                else if (init instanceof LiteralTree l && l.getValue() instanceof String) type = "String";
+            }
+            if (type != null) types.put(node.getName().toString(), type);
+        }
+
+        private void report(Tree node, String rule, String subject, String message) {
+            // One finding per rule and variable is enough to point the model at it.
+            if (subject != null && !reported.add(rule + ":" + subject)) return;
+
+            long start = positions.getStartPosition(unit, node);
+            LineMap lines = unit.getLineMap();
+            findings.add(new Finding(lines.getLineNumber(start), lines.getColumnNumber(start), rule, message));
+        }
+
+        private static boolean startsWith(BinaryTree sum, String name) {
+            ExpressionTree left = sum;
+            while (left instanceof BinaryTree b && b.getKind() == Tree.Kind.PLUS) left = b.getLeftOperand();
+            return left instanceof IdentifierTree id && id.getName().contentEquals(name);
+        }
+
+        private static boolean isZero(ExpressionTree tree) {
+            return tree instanceof LiteralTree l && Integer.valueOf(0).equals(l.getValue());
+        }
+
+        private static boolean isPattern(ExpressionTree tree) {
+            String s = tree.toString();
+            return s.equals("Pattern") || s.equals("java.util.regex.Pattern");
+        }
+
+        private boolean isConstant(ExpressionTree tree) {
+            if (tree instanceof LiteralTree) return true;
+            // A constant like REGEX, or a concatenation of literals.
+            if (tree instanceof IdentifierTree id) return id.getName().toString().equals(id.getName().toString().toUpperCase(Locale.ROOT));
+            return tree instanceof BinaryTree b && isConstant(b.getLeftOperand()) && isConstant(b.getRightOperand());
+        }
+
+        private static boolean isRegex(String method, ExpressionTree arg) {
+            if (!(arg instanceof LiteralTree l) || !(l.getValue() instanceof String regex)) {
+                return !method.equals("split");
+            }
+            if (!method.equals("split")) return true;
+            boolean plainChar = regex.length() == 1 && REGEX_META.indexOf(regex.charAt(0)) < 0;
+            boolean escapedChar = regex.length() == 2 && regex.charAt(0) == '\\'
+                    && !Character.isLetterOrDigit(regex.charAt(1));
+            return !plainChar && !escapedChar;
+        }
+    }
+}
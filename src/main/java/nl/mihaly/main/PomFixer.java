@@ -1,6 +1,5 @@
 package nl.mihaly.main;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.function.Consumer;
 
@@ -9,15 +8,37 @@ public class PomFixer {
     private final Consumer<String> logger;
     private final JavaCodeExtractor extractor;
     private final OllamaClient ollama;
+    private final ModelPolicy policy;
+    private final CancellationToken token;
     private final String className;
     private final String packageName;
 
     public PomFixer(Consumer<String> logger,
                     JavaCodeExtractor extractor,
                     String packageName, String className) {
+        this(logger, extractor, packageName, className, new CancellationToken());
+    }
+
+    public PomFixer(Consumer<String> logger,
+                    JavaCodeExtractor extractor,
+                    String packageName, String className,
+                    CancellationToken token) {
+        this(logger, extractor, packageName, className, token, null);
+    }
+
+    /**
+     * Creates a fixer whose model calls count towards the given scheduler job.
+     */
+    public PomFixer(Consumer<String> logger,
+                    JavaCodeExtractor extractor,
+                    String packageName, String className,
+                    CancellationToken token,
+                    ModelScheduler.Job job) {
         this.logger = logger;
         this.extractor = extractor;
-        this.ollama = new OllamaClient(logger);
+        this.token = token;
+        this.ollama = new OllamaClient(logger, token, job);
+        this.policy = ModelPolicy.fromSettings(logger);
         this.packageName = packageName;
         this.className = className;
     }
@@ -29,12 +50,7 @@ public class PomFixer {
      */
     public boolean needsPomFix(Path projectRoot, String output) {
         // If the class does not exist yet → NEVER fix the pom
-        Path classPath = projectRoot
-                .resolve("src/main/java")
-                .resolve(packageName.replace('.', '/'))
-                .resolve(className + ".java");
-
-        if (!Files.exists(classPath)) {
+        if (!ProjectIndex.forProject(projectRoot, logger).containsMainClass(packageName, className)) {
             return false;
         }
 
@@ -51,14 +67,22 @@ public class PomFixer {
     }
 
     public boolean fixPom(Path projectRoot, String testOutput) {
+        if (token.isCancelled()) return false;
+
         String prompt = Texts.POM_PROMPT.formatted(testOutput);
         logger.accept("POM fix prompt:");
         logger.accept(prompt);
 
-        String aiResponse = ollama.call("deepseek-coder-v2:16b", prompt);
+        ModelPolicy.Choice choice = policy.pomFix();
+        long start = System.currentTimeMillis();
+        String aiResponse = ollama.call(choice.model, prompt, GenerationBudget.shared(logger)
+                .options(choice.model, prompt, 0, choice.options, GenerationBudget.Output.POM));
+        RouteStats.shared().recordLatency(choice, System.currentTimeMillis() - start);
         logger.accept("POM fix AI response:");
         logger.accept(aiResponse);
 
+        if (token.isCancelled()) return false;
+
         String depsXml = extractor.extractDependencies(aiResponse);
         if (depsXml == null) {
             logger.accept("No <dependency> blocks found in AI response.");
@@ -0,0 +1,411 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * In-memory index of the main and test sources of a Maven project.
+ *
+ * Scans src/main/java and src/test/java once, keeps sources, package-to-file
+ * maps and content hashes in memory and keeps them up to date from
+ * WatchService events. One index is shared by all jobs on the same project.
+ */
+public class ProjectIndex {
+
+    private static final Map<Path, ProjectIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private static final Pattern PACKAGE = Pattern.compile("(?m)^\\s*package\\s+([\\w.]+)\\s*;");
+
+    private final Consumer<String> logger;
+    private final Path projectRoot;
+    private final Path mainRoot;
+    private final Path testRoot;
+
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
+    private WatchService watcher;
+
+    private ProjectIndex(Consumer<String> logger, Path projectRoot) {
+        this.logger = logger;
+        this.projectRoot = projectRoot;
+        this.mainRoot = projectRoot.resolve("src/main/java");
+        this.testRoot = projectRoot.resolve("src/test/java");
+    }
+
+    /**
+     * Returns the shared index for the given project, scanning it on first use.
+     */
+    public static ProjectIndex forProject(Path projectRoot, Consumer<String> logger) {
+        Path key = projectRoot.toAbsolutePath().normalize();
+        return INDEXES.computeIfAbsent(key, root -> {
+            ProjectIndex index = new ProjectIndex(logger, root);
+            index.scan();
+            index.startWatching();
+            return index;
+        });
+    }
+
+    /**
+     * Stops watching a project and forgets its index, e.g. for deleted scratch copies.
+     */
+    public static void release(Path projectRoot) {
+        ProjectIndex index = INDEXES.remove(projectRoot.toAbsolutePath().normalize());
+        if (index != null && index.watcher != null) {
+            try {
+                index.watcher.close();
+            } catch (IOException ignored) {
+                // Closing is best effort; the watch thread stops either way.
+            }
+        }
+    }
+
+    public Path getProjectRoot() {
+        return projectRoot;
+    }
+
+    /**
+     * Returns true if the main source tree contains the given class.
+     */
+    public boolean containsMainClass(String packageName, String className) {
+        return entries.containsKey(mainRoot.resolve(relativePath(packageName, className)));
+    }
+
+    /**
+     * Returns the source of a main class, or null if it is not indexed.
+     */
+    public String mainSource(String packageName, String className) {
+        Entry entry = entries.get(mainRoot.resolve(relativePath(packageName, className)));
+        return entry == null ? null : entry.source;
+    }
+
+    /**
+     * Returns the content hash of a main class, or null if it is not indexed.
+     */
+    public String mainHash(String packageName, String className) {
+        Entry entry = entries.get(mainRoot.resolve(relativePath(packageName, className)));
+        return entry == null ? null : entry.hash;
+    }
+
+    /**
+     * Returns a hash over all main sources and their paths below src/main/java,
+     * so identical trees in different directories (scratch copies) hash the same.
+     */
+    public String mainSourcesHash() {
+        Map<String, String> hashes = new TreeMap<>();
+        for (Map.Entry<Path, Entry> e : entries.entrySet()) {
+            if (e.getKey().startsWith(mainRoot)) {
+                hashes.put(mainRoot.relativize(e.getKey()).toString(), e.getValue().hash);
+            }
+        }
+        return sha256(hashes.toString());
+    }
+
+    /**
+     * Returns all indexed files of a package, main and test sources combined.
+     */
+    public List<Path> filesInPackage(String packageName) {
+        String pkg = packageName == null ? "" : packageName;
+        List<Path> result = new ArrayList<>();
+        for (Map.Entry<Path, Entry> e : entries.entrySet()) {
+            if (e.getValue().packageName.equals(pkg)) {
+                result.add(e.getKey());
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns all indexed test files.
+     */
+    public List<Path> testFiles() {
+        List<Path> result = new ArrayList<>();
+        for (Path file : entries.keySet()) {
+            if (file.startsWith(testRoot)) result.add(file);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns all packages that contain at least one indexed file.
+     */
+    public Set<String> packages() {
+        Set<String> result = new TreeSet<>();
+        for (Entry entry : entries.values()) {
+            result.add(entry.packageName);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the indexed source of a file, or null if it is not indexed.
+     */
+    public String source(Path file) {
+        Entry entry = entries.get(file.toAbsolutePath().normalize());
+        return entry == null ? null : entry.source;
+    }
+
+    /**
+     * Returns all test sources that reference the given class, keyed by path.
+     *
+     * The conventional test class (ClassNameTest) comes first, followed by any
+     * other test class that references the class by its simple name from the
+     * same package, through an import or by its fully qualified name. Nested and
+     * parameterized tests live in those files and are therefore included.
+     */
+    public Map<Path, String> testsReferencing(String packageName, String className) {
+        String pkg = packageName == null ? "" : packageName;
+        String fqcn = pkg.isBlank() ? className : pkg + "." + className;
+
+        Pattern simpleRef = Pattern.compile("\\b" + Pattern.quote(className) + "\\b");
+        Pattern importRef = Pattern.compile("(?m)^\\s*import\\s+("
+                + Pattern.quote(fqcn) + "|" + Pattern.quote(pkg) + "\\.\\*)\\s*;");
+
+        Path conventional = testRoot.resolve(relativePath(pkg, className + "Test"));
+
+        List<Path> matches = new ArrayList<>();
+        for (Map.Entry<Path, Entry> e : entries.entrySet()) {
+            Path file = e.getKey();
+            Entry entry = e.getValue();
+
+            if (!file.startsWith(testRoot)) continue;
+            if (!simpleRef.matcher(entry.source).find()) continue;
+
+            boolean visible = entry.packageName.equals(pkg)
+                    || entry.source.contains(fqcn)
+                    || (!pkg.isBlank() && importRef.matcher(entry.source).find());
+
+            if (visible) {
+                matches.add(file);
+            }
+        }
+
+        matches.sort(Comparator
+                .comparing((Path p) -> !p.equals(conventional))
+                .thenComparing(Comparator.naturalOrder()));
+
+        Map<Path, String> result = new LinkedHashMap<>();
+        for (Path file : matches) {
+            result.put(file, entries.get(file).source);
+        }
+        return result;
+    }
+
+    /**
+     * Re-reads a single file immediately, without waiting for the watcher.
+     * Used right after the agent writes a file itself.
+     */
+    public void refresh(Path file) {
+        if (file == null) return;
+        Path abs = file.toAbsolutePath().normalize();
+        if (Files.isRegularFile(abs)) {
+            indexFile(abs);
+        } else {
+            entries.remove(abs);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // SCANNING
+    // ------------------------------------------------------------
+
+    private void scan() {
+        long start = System.currentTimeMillis();
+        scanTree(mainRoot);
+        scanTree(testRoot);
+        logger.accept("Indexed " + entries.size() + " source files of " + projectRoot
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void scanTree(Path root) {
+        scanTree(root, entries);
+    }
+
+    private void scanTree(Path root, Map<Path, Entry> target) {
+        if (!Files.isDirectory(root)) return;
+
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(p -> p.toString().endsWith(".java"))
+                    .filter(Files::isRegularFile)
+                    .forEach(file -> indexFile(file, target));
+        } catch (IOException e) {
+            logger.accept("Failed to scan " + root + ": " + e.getMessage());
+        }
+    }
+
+    private void indexFile(Path file) {
+        indexFile(file, entries);
+    }
+
+    private void indexFile(Path file, Map<Path, Entry> target) {
+        if (!file.toString().endsWith(".java")) return;
+
+        try {
+            String source = Files.readString(file, StandardCharsets.UTF_8);
+            String hash = sha256(source);
+
+            Entry old = entries.get(file);
+            if (old != null && old.hash.equals(hash)) {
+                target.put(file, old);
+                return;
+            }
+
+            var m = PACKAGE.matcher(source);
+            String pkg = m.find() ? m.group(1) : "";
+
+            target.put(file, new Entry(source, hash, pkg));
+        } catch (IOException e) {
+            // File may be half-written or already deleted; the next event retries.
+            target.remove(file);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // WATCHING
+    // ------------------------------------------------------------
+
+    private void startWatching() {
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            registerTree(mainRoot);
+            registerTree(testRoot);
+        } catch (IOException e) {
+            logger.accept("File watching unavailable, index will not update: " + e.getMessage());
+            return;
+        }
+
+        Thread thread = new Thread(this::watchLoop, "project-index-" + projectRoot.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void registerTree(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            // Watch the nearest existing parent so the tree is picked up once created.
+            Path parent = root.getParent();
+            while (parent != null && !Files.isDirectory(parent)) {
+                parent = parent.getParent();
+            }
+            if (parent != null && parent.startsWith(projectRoot)) {
+                register(parent);
+            }
+            return;
+        }
+
+        try (Stream<Path> dirs = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                register(dir);
+            }
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        if (watchedDirs.containsValue(dir)) return;
+        WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        watchedDirs.put(key, dir);
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = watchedDirs.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    handle(dir, event);
+                }
+            }
+
+            if (!key.reset()) {
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    private void handle(Path dir, WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW) {
+            // Events were lost: rescan into a new map, so readers never see an empty index.
+            Map<Path, Entry> fresh = new HashMap<>();
+            scanTree(mainRoot, fresh);
+            scanTree(testRoot, fresh);
+            entries.putAll(fresh);
+            entries.keySet().retainAll(fresh.keySet());
+            return;
+        }
+
+        Path child = dir.resolve((Path) event.context());
+
+        try {
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                if (child.startsWith(mainRoot) || child.startsWith(testRoot)) {
+                    registerTree(child);
+                    scanTree(child);
+                } else if (mainRoot.startsWith(child) || testRoot.startsWith(child)) {
+                    registerTree(mainRoot);
+                    registerTree(testRoot);
+                    scanTree(mainRoot);
+                    scanTree(testRoot);
+                }
+                return;
+            }
+        } catch (IOException e) {
+            logger.accept("Failed to watch " + child + ": " + e.getMessage());
+        }
+
+        if (event.kind() == ENTRY_DELETE) {
+            entries.keySet().removeIf(p -> p.startsWith(child));
+        } else {
+            refresh(child);
+        }
+    }
+
+    // ------------------------------------------------------------
+    // HELPERS
+    // ------------------------------------------------------------
+
+    private static String relativePath(String packageName, String className) {
+        String pkg = packageName == null ? "" : packageName;
+        return pkg.isBlank()
+                ? className + ".java"
+                : pkg.replace('.', '/') + "/" + className + ".java";
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        final String source;
+        final String hash;
+        final String packageName;
+
+        Entry(String source, String hash, String packageName) {
+            this.source = source;
+            this.hash = hash;
+            this.packageName = packageName;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Creates a ready-to-run Maven project for a class and its test, from the
+ * bundled archetype's pom (JUnit 5 and Surefire, as in CodingAI's own pom).
+ *
+ * Before the project is handed to the agent, the template is built once in a
+ * temporary directory with a trivial test, online, so the compiler, Surefire,
+ * its JUnit provider and JUnit itself are in the local repository. It is then
+ * built again offline to verify that. This also records the CDS class list
+ * and the "dependencies resolved" state, so the agent's first iteration is a
+ * real, offline test run instead of a dependency download or a pom fix.
+ */
+public class ProjectScaffolder {
+
+    private static final String TEMPLATE = "/archetype-resources/pom.xml";
+
+    private static final String WARMUP_TEST = """
+            import org.junit.jupiter.api.Test;
+
+            import static org.junit.jupiter.api.Assertions.assertTrue;
+
+            class WarmupTest {
+                @Test
+                void warmup() {
+                    assertTrue(true);
+                }
+            }
+            """;
+
+    private final Consumer<String> logger;
+    private final CancellationToken token;
+
+    public ProjectScaffolder(Consumer<String> logger) {
+        this(logger, new CancellationToken());
+    }
+
+    public ProjectScaffolder(Consumer<String> logger, CancellationToken token) {
+        this.logger = logger;
+        this.token = token;
+    }
+
+    /**
+     * Creates the project in projectDir with the given test file and warms up
+     * the local repository. Returns false if the project could not be created
+     * or the build does not work offline.
+     */
+    public boolean scaffold(Path projectDir, String packageName, Path testFile) {
+        try {
+            if (Files.exists(projectDir.resolve("pom.xml"))) {
+                logger.accept(projectDir + " already contains a pom.xml; not scaffolding.");
+                return false;
+            }
+
+            String pom = create(projectDir, packageName, testFile.getFileName().toString(),
+                    Files.readString(testFile, StandardCharsets.UTF_8));
+            logger.accept("Created project " + projectDir);
+            return warmUp(pom);
+
+        } catch (IOException e) {
+            logger.accept("Scaffolding failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the pom and the test, and creates the source directory. Returns the pom.
+     */
+    String create(Path projectDir, String packageName, String testFileName, String testSource) throws IOException {
+        String pkg = packageName == null ? "" : packageName;
+        String pkgPath = pkg.isBlank() ? "" : pkg.replace('.', '/') + "/";
+
+        String pom = pom(pkg.isBlank() ? "codingai" : pkg, projectDir.getFileName().toString());
+
+        Files.createDirectories(projectDir.resolve("src/main/java/" + pkgPath));
+        Files.createDirectories(projectDir.resolve("src/test/java/" + pkgPath));
+        Files.writeString(projectDir.resolve("pom.xml"), pom, StandardCharsets.UTF_8);
+        Files.writeString(projectDir.resolve("src/test/java/" + pkgPath + testFileName), testSource, StandardCharsets.UTF_8);
+        return pom;
+    }
+
+    /**
+     * The archetype pom with its placeholders filled in.
+     */
+    private String pom(String groupId, String artifactId) throws IOException {
+        try (InputStream in = ProjectScaffolder.class.getResourceAsStream(TEMPLATE)) {
+            if (in == null) throw new IOException("Template " + TEMPLATE + " not found on the classpath");
+
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8)
+                    .replace("${groupId}", groupId)
+                    .replace("${artifactId}", artifactId.toLowerCase().replaceAll("[^a-z0-9._-]", "-"))
+                    .replace("${version}", "1.0-SNAPSHOT");
+        }
+    }
+
+    /**
+     * Builds the pom with a trivial test online, then offline.
+     */
+    boolean warmUp(String pom) throws IOException {
+        Path warm = Files.createTempDirectory("codingai-warmup-");
+        try {
+            Files.writeString(warm.resolve("pom.xml"), pom, StandardCharsets.UTF_8);
+            Files.createDirectories(warm.resolve("src/test/java"));
+            Files.writeString(warm.resolve("src/test/java/WarmupTest.java"), WARMUP_TEST, StandardCharsets.UTF_8);
+
+            MavenRunner maven = new MavenRunner(logger, token);
+
+            long start = System.currentTimeMillis();
+            String online = maven.runTests(warm);
+            if (!maven.testsGreen(online)) {
+                logger.accept("Warm-up build failed:");
+                logger.accept(online);
+                return false;
+            }
+            logger.accept("Local repository populated in " + (System.currentTimeMillis() - start) + " ms.");
+
+            // LeanBuild now knows the dependencies are resolved, so this run is offline.
+            String offline = maven.runTests(warm);
+            if (!maven.testsGreen(offline)) {
+                logger.accept("Offline verification failed:");
+                logger.accept(offline);
+                return false;
+            }
+            logger.accept("Verified that the project builds offline.");
+            return true;
+
+        } finally {
+            ProjectIndex.release(warm);
+            try (Stream<Path> files = Files.walk(warm)) {
+                for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Usage: ProjectScaffolder [--deadline &lt;duration&gt;] &lt;projectDir&gt; &lt;package.ClassName&gt; &lt;testFile&gt; [specFile]
+     *
+     * With a specification file the agent is started on the new project right away.
+     * The deadline, e.g. "30m", defaults to the agent.deadline setting and covers
+     * scaffolding and the agent run; Ctrl-C also stops the run.
+     */
+    public static void main(String[] args) throws IOException {
+        CancellationToken token = new CancellationToken();
+        Duration deadline = CancellationToken.parseDuration(Settings.get("agent.deadline", null));
+        List<String> positional = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--deadline") && i + 1 < args.length) {
+                deadline = CancellationToken.parseDuration(args[++i]);
+                if (deadline == null) {
+                    System.err.println("Invalid deadline: " + args[i]);
+                    System.exit(2);
+                }
+            } else {
+                positional.add(args[i]);
+            }
+        }
+
+        if (positional.size() < 3 || positional.size() > 4) {
+            System.err.println("Usage: ProjectScaffolder [--deadline <duration>] <projectDir> <package.ClassName> <testFile> [specFile]");
+            System.exit(2);
+        }
+        if (deadline != null) token.setDeadline(deadline);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> token.cancel("Interrupted")));
+
+        Path projectDir = Path.of(positional.get(0));
+        String qualified = positional.get(1);
+        int dot = qualified.lastIndexOf('.');
+        String packageName = dot < 0 ? "" : qualified.substring(0, dot);
+        String className = qualified.substring(dot + 1);
+
+        boolean ready = new ProjectScaffolder(System.out::println, token)
+                .scaffold(projectDir, packageName, Path.of(positional.get(2)));
+        if (!ready) System.exit(1);
+
+        if (positional.size() == 4) {
+            String specification = Files.readString(Path.of(positional.get(3)), StandardCharsets.UTF_8);
+            boolean green = new CodingAIAgent(System.out::println, specification, className, packageName, token)
+                    .runFullProcess(projectDir);
+            System.exit(green ? 0 : 1);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,56 @@
+package nl.mihaly.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency and success per model route, shared by all agents in the JVM.
+ *
+ * A route call counts as a success when the candidate it produced made the
+ * tests green or reduced the number of failures.
+ */
+public class RouteStats {
+
+    private static final RouteStats SHARED = new RouteStats();
+
+    private final Map<String, Stat> stats = new TreeMap<>();
+
+    public static RouteStats shared() {
+        return SHARED;
+    }
+
+    public synchronized void recordLatency(ModelPolicy.Choice choice, long millis) {
+        Stat s = stat(choice);
+        s.calls++;
+        s.totalMillis += millis;
+    }
+
+    public synchronized void recordOutcome(ModelPolicy.Choice choice, boolean success) {
+        Stat s = stat(choice);
+        s.outcomes++;
+        if (success) s.successes++;
+    }
+
+    public synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Stat> e : stats.entrySet()) {
+            Stat s = e.getValue();
+            lines.add(String.format("%s: %d calls, avg %d ms, success %d/%d",
+                    e.getKey(), s.calls, s.calls == 0 ? 0 : s.totalMillis / s.calls, s.successes, s.outcomes));
+        }
+        return lines;
+    }
+
+    private Stat stat(ModelPolicy.Choice choice) {
+        return stats.computeIfAbsent(choice.route + " (" + choice.model + ")", k -> new Stat());
+    }
+
+    private static class Stat {
+        int calls;
+        long totalMillis;
+        int outcomes;
+        int successes;
+    }
+}
@@ -0,0 +1,192 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of one run, so a run can be resumed after the GUI is
+ * closed, the machine reboots or Ollama crashes.
+ *
+ * Every tested candidate is appended as one JSON line with its cycle,
+ * iteration, stagnation count, model, prompt hash, source and test output,
+ * and forced to disk before the next iteration starts. A line torn by a crash
+ * is ignored when reading. The journal is keyed by project, class,
+ * specification and test source, and lives in ~/.codingai/journal.
+ */
+public class RunJournal implements AutoCloseable {
+
+    private final Consumer<String> logger;
+    private final Path file;
+    private FileChannel channel;
+
+    /**
+     * One tested candidate.
+     */
+    public static class Entry {
+        public final int cycle;
+        public final int iteration;
+        public final int stagnant;
+        public final String model;
+        public final String promptHash;
+        public final String source;
+        public final TestResult result;
+
+        Entry(int cycle, int iteration, int stagnant, String model, String promptHash, String source, TestResult result) {
+            this.cycle = cycle;
+            this.iteration = iteration;
+            this.stagnant = stagnant;
+            this.model = model;
+            this.promptHash = promptHash;
+            this.source = source;
+            this.result = result;
+        }
+    }
+
+    private RunJournal(Consumer<String> logger, Path file) {
+        this.logger = logger;
+        this.file = file;
+    }
+
+    /**
+     * Opens the journal for this project, class, specification and tests.
+     */
+    public static RunJournal open(Path projectRoot, String packageName, String className,
+                                  String specification, String testSource, Consumer<String> logger) {
+        String key = ProjectIndex.sha256(projectRoot.toAbsolutePath().normalize() + "\n"
+                + packageName + "\n" + className + "\n" + specification + "\n" + testSource).substring(0, 24);
+        Path dir = Paths.get(System.getProperty("user.home"), ".codingai", "journal");
+        return new RunJournal(logger, dir.resolve(className + "-" + key + ".jsonl"));
+    }
+
+    /**
+     * Returns the candidates of an unfinished earlier run, oldest first, or an
+     * empty list if there is nothing to resume. A finished journal is removed.
+     */
+    public List<Entry> unfinishedEntries() {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.exists(file)) return entries;
+
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.endsWith("}")) continue; // torn by a crash
+
+                String type = Json.stringField(line, "type");
+                if ("finished".equals(type)) {
+                    entries.clear();
+                    Files.delete(file);
+                    return entries;
+                }
+                if (!"candidate".equals(type)) continue;
+
+                String source = Json.stringField(line, "source");
+                String output = Json.stringField(line, "output");
+                if (source == null || output == null) continue;
+
+                entries.add(new Entry(
+                        (int) Json.longField(line, "cycle"),
+                        (int) Json.longField(line, "iteration"),
+                        (int) Json.longField(line, "stagnant"),
+                        Json.stringField(line, "model"),
+                        Json.stringField(line, "promptHash"),
+                        source,
+                        TestResult.parse(output)));
+            }
+        } catch (IOException e) {
+            logger.accept("Failed to read run journal " + file + ": " + e.getMessage());
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Discards an earlier journal, to start from scratch.
+     */
+    public void reset() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.accept("Failed to remove run journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends a tested candidate and forces it to disk.
+     */
+    public void recordCandidate(int cycle, int iteration, int stagnant, String model, String promptHash,
+                                String source, TestResult result) {
+        if (source == null) return;
+
+        append("{\"type\": \"candidate\", \"cycle\": " + cycle
+                + ", \"iteration\": " + iteration
+                + ", \"stagnant\": " + stagnant
+                + ", \"model\": \"" + Json.escape(model == null ? "" : model) + "\""
+                + ", \"promptHash\": \"" + (promptHash == null ? "" : promptHash) + "\""
+                + ", \"testsRun\": " + result.testsRun
+                + ", \"failures\": " + result.failures
+                + ", \"errors\": " + result.errors
+                + ", \"compileErrors\": " + result.compileErrors
+                + ", \"green\": " + result.green
+                + ", \"source\": \"" + Json.escape(source) + "\""
+                + ", \"output\": \"" + Json.escape(result.output) + "\"}");
+    }
+
+    /**
+     * Marks the run as finished, so the next run starts from scratch.
+     */
+    public void recordFinished(boolean green) {
+        append("{\"type\": \"finished\", \"green\": " + green + "}");
+        close();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Everything written was already forced to disk.
+        }
+        channel = null;
+    }
+
+    private boolean endsWithNewline() throws IOException {
+        if (!Files.exists(file)) return true;
+
+        try (SeekableByteChannel in = Files.newByteChannel(file, StandardOpenOption.READ)) {
+            if (in.size() == 0) return true;
+            ByteBuffer last = ByteBuffer.allocate(1);
+            in.position(in.size() - 1).read(last);
+            return last.get(0) == '\n';
+        }
+    }
+
+    private synchronized void append(String record) {
+        try {
+            if (channel == null) {
+                Files.createDirectories(file.getParent());
+                boolean torn = !endsWithNewline();
+                channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                if (torn) {
+                    // Terminate a line torn by a crash, so it stays separate from new records.
+                    channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            logger.accept("Failed to write run journal: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A temporary copy of a Maven project to build in, so the agent's build churn
+ * does not hit the real target/ directory and parallel jobs do not see each
+ * other's half-written classes.
+ *
+ * The copy is placed in workspace.dir, by default /dev/shm (RAM-backed) when it
+ * exists, otherwise the temp directory. With workspace.reflink=true the tree is
+ * copied with "cp --reflink=auto", which shares blocks on filesystems that
+ * support it (btrfs, xfs). Build output, VCS and IDE directories are skipped and
+ * test sources can be filtered out. Results are copied back with syncBack.
+ */
+public class ScratchProject implements AutoCloseable {
+
+    private static final Set<String> SKIPPED_DIRS = Set.of(".git", ".idea", ".codingai");
+
+    private final Consumer<String> logger;
+    private final Path source;
+    private final Path root;
+
+    private ScratchProject(Consumer<String> logger, Path source, Path root) {
+        this.logger = logger;
+        this.source = source;
+        this.root = root;
+    }
+
+    /**
+     * Copies the whole project into a new temporary directory.
+     */
+    public static ScratchProject create(Path source, Consumer<String> logger) throws IOException {
+        return create(source, test -> true, logger);
+    }
+
+    /**
+     * Copies the project into a new temporary directory.
+     *
+     * @param includeTest decides for each file under src/test/java whether it is copied
+     */
+    public static ScratchProject create(Path source, Predicate<Path> includeTest, Consumer<String> logger)
+            throws IOException {
+        long start = System.currentTimeMillis();
+
+        Path base = baseDir();
+        Files.createDirectories(base);
+        Path root = Files.createTempDirectory(base, "codingai-");
+
+        boolean reflinked = Settings.getBoolean("workspace.reflink", false) && reflinkCopy(source, root);
+        if (!reflinked) {
+            copyTree(source, root);
+        }
+
+        // Filter tests afterwards, so both copy strategies behave the same.
+        Path sourceTests = source.resolve("src/test/java");
+        Path scratchTests = root.resolve("src/test/java");
+        if (Files.isDirectory(scratchTests)) {
+            try (Stream<Path> files = Files.walk(scratchTests)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (!Files.isRegularFile(file)) continue;
+                    if (!includeTest.test(sourceTests.resolve(scratchTests.relativize(file)))) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+
+        logger.accept("Created scratch copy of " + source + " in " + root
+                + (reflinked ? " (reflink)" : "") + " in " + (System.currentTimeMillis() - start) + " ms");
+        return new ScratchProject(logger, source, root);
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    public Path source() {
+        return source;
+    }
+
+    /**
+     * Copies one file, given relative to the project root, from the scratch copy
+     * back into the real project.
+     */
+    public void syncBack(Path relative) throws IOException {
+        Path from = root.resolve(relative);
+        Path to = source.resolve(relative);
+        copyFile(from, to);
+        ProjectIndex.forProject(source, logger).refresh(to);
+        logger.accept("Synced " + relative + " back to " + source);
+    }
+
+    /**
+     * Copies a file back only if its content differs from the real project's.
+     */
+    public void syncBackIfChanged(Path relative) throws IOException {
+        Path from = root.resolve(relative);
+        Path to = source.resolve(relative);
+        if (!Files.exists(from)) return;
+        if (Files.exists(to) && Files.mismatch(from, to) == -1) return;
+        syncBack(relative);
+    }
+
+    /**
+     * Deletes the scratch copy.
+     */
+    @Override
+    public void close() {
+        ProjectIndex.release(root);
+        try {
+            deleteTree(root);
+        } catch (IOException e) {
+            logger.accept("Failed to remove scratch copy " + root + ": " + e.getMessage());
+        }
+    }
+
+    // ------------------------------------------------------------
+    // COPYING
+    // ------------------------------------------------------------
+
+    private static Path baseDir() {
+        String configured = Settings.get("workspace.dir", null);
+        if (configured != null) return Paths.get(configured);
+
+        Path shm = Paths.get("/dev/shm");
+        if (Files.isDirectory(shm) && Files.isWritable(shm)) return shm;
+
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    private static void copyTree(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(source) && isSkipped(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Copies every top-level entry except the skipped directories with
+     * "cp -R --reflink=auto". Nested build directories are removed afterwards.
+     * Returns false if cp is not available or fails.
+     */
+    private static boolean reflinkCopy(Path source, Path target) {
+        try (Stream<Path> entries = Files.list(source)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                if (Files.isDirectory(entry) && isSkipped(entry)) continue;
+
+                Process p = new ProcessBuilder("cp", "-R", "--reflink=auto",
+                        entry.toString(), target.resolve(entry.getFileName().toString()).toString())
+                        .redirectErrorStream(true)
+                        .start();
+                p.getInputStream().readAllBytes();
+                if (p.waitFor() != 0) return false;
+            }
+
+            List<Path> nested;
+            try (Stream<Path> dirs = Files.walk(target)) {
+                nested = dirs.filter(Files::isDirectory)
+                        .filter(d -> !d.equals(target) && isSkipped(d))
+                        .toList();
+            }
+            for (Path dir : nested) {
+                deleteTree(dir);
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * VCS and IDE directories, and target/ directories next to a pom.xml.
+     */
+    private static boolean isSkipped(Path dir) {
+        String name = dir.getFileName().toString();
+        if (SKIPPED_DIRS.contains(name)) return true;
+        return name.equals("target") && Files.exists(dir.resolveSibling("pom.xml"));
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static void copyFile(Path from, Path to) throws IOException {
+        if (!Files.exists(from)) return;
+        Files.createDirectories(to.getParent());
+        Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
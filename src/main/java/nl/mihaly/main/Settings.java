@@ -0,0 +1,88 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Reads CodingAI settings from ~/.codingai.properties.
+ *
+ * Every key can be overridden on the command line with a system property
+ * of the same name, e.g. -Dollama.endpoints=http://localhost:11434.
+ */
+public final class Settings {
+
+    private static final Path FILE = Paths.get(System.getProperty("user.home"), ".codingai.properties");
+
+    private static final Properties PROPS = load();
+
+    private Settings() {
+    }
+
+    private static Properties load() {
+        Properties props = new Properties();
+        if (Files.exists(FILE)) {
+            try (Reader reader = Files.newBufferedReader(FILE, StandardCharsets.UTF_8)) {
+                props.load(reader);
+            } catch (IOException e) {
+                System.err.println("Failed to load " + FILE + ": " + e.getMessage());
+            }
+        }
+        return props;
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = PROPS.getProperty(key);
+        }
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        try {
+            return Double.parseDouble(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Returns a comma-separated setting as a list of trimmed, non-empty values.
+     */
+    public static List<String> getList(String key, String defaultValue) {
+        List<String> result = new ArrayList<>();
+        for (String part : get(key, defaultValue).split(",")) {
+            if (!part.isBlank()) {
+                result.add(part.trim());
+            }
+        }
+        return result;
+    }
+}
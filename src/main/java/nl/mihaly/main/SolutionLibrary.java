@@ -0,0 +1,266 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Local library of classes that were generated green, used as examples for new runs.
+ *
+ * Every green (specification, test, solution) triple is stored under
+ * ~/.codingai/solutions. The specification and test text are indexed with BM25,
+ * so the most similar earlier solutions can be included in the first prompt.
+ * The index is built once per JVM and updated incrementally when a run turns green.
+ *
+ * Also keeps how many iterations runs needed with and without examples, so the
+ * effect of retrieval can be reported.
+ */
+public class SolutionLibrary {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static SolutionLibrary shared;
+
+    private final Consumer<String> logger;
+    private final Path dir;
+
+    /**
+     * Minimum BM25 score for a match to count as a hit.
+     */
+    private final double minScore;
+
+    private final List<Solution> solutions = new ArrayList<>();
+    private final Map<String, Integer> documentFrequency = new HashMap<>();
+    private long totalLength;
+
+    private SolutionLibrary(Consumer<String> logger, Path dir) {
+        this.logger = logger;
+        this.dir = dir;
+        this.minScore = Settings.getDouble("retrieval.minScore", 3.0);
+    }
+
+    public static synchronized SolutionLibrary shared(Consumer<String> logger) {
+        if (shared == null) {
+            shared = new SolutionLibrary(logger, Paths.get(System.getProperty("user.home"), ".codingai", "solutions"));
+            shared.load();
+        }
+        return shared;
+    }
+
+    /**
+     * A stored green solution together with its match score.
+     */
+    public static class Match {
+        public final String className;
+        public final String specification;
+        public final String testSource;
+        public final String solution;
+        public final double score;
+
+        Match(Solution s, double score) {
+            this.className = s.className;
+            this.specification = s.specification;
+            this.testSource = s.testSource;
+            this.solution = s.solution;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Returns up to k earlier solutions most similar to the specification and
+     * tests, best first. Only matches above the minimum score are returned.
+     */
+    public synchronized List<Match> search(String specification, String testSource, int k) {
+        if (solutions.isEmpty() || k <= 0) return List.of();
+
+        Map<String, Integer> query = termCounts(tokenize(specification + "\n" + testSource));
+        double avgLength = (double) totalLength / solutions.size();
+
+        List<Match> matches = new ArrayList<>();
+        for (Solution s : solutions) {
+            double score = 0;
+            for (String term : query.keySet()) {
+                Integer tf = s.terms.get(term);
+                if (tf == null) continue;
+
+                int df = documentFrequency.getOrDefault(term, 0);
+                double idf = Math.log(1 + (solutions.size() - df + 0.5) / (df + 0.5));
+                score += idf * (tf * (K1 + 1)) / (tf + K1 * (1 - B + B * s.length / avgLength));
+            }
+            if (score >= minScore) {
+                matches.add(new Match(s, score));
+            }
+        }
+
+        matches.sort(Comparator.comparingDouble((Match m) -> m.score).reversed());
+        return matches.size() > k ? new ArrayList<>(matches.subList(0, k)) : matches;
+    }
+
+    /**
+     * Stores a green solution and adds it to the index.
+     */
+    public synchronized void add(String className, String specification, String testSource, String solution) {
+        Properties props = new Properties();
+        props.setProperty("className", className);
+        props.setProperty("specification", specification);
+        props.setProperty("testSource", testSource);
+        props.setProperty("solution", solution);
+
+        String id = ProjectIndex.sha256(specification + "\n" + testSource + "\n" + solution).substring(0, 16);
+        Path file = dir.resolve(id + ".properties");
+
+        try {
+            Files.createDirectories(dir);
+            if (!Files.exists(file)) {
+                try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    props.store(writer, "CodingAI green solution");
+                }
+                index(props);
+                logger.accept("Stored green solution in library (" + solutions.size() + " solutions).");
+            }
+        } catch (IOException e) {
+            logger.accept("Failed to store solution: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records how many iterations a green run needed, and whether it had examples.
+     * Returns a one-line summary of hit rate and average iterations with and without examples.
+     */
+    public synchronized String recordRun(boolean usedExamples, int iterations) {
+        Properties stats = loadStats();
+        String prefix = usedExamples ? "withExamples" : "withoutExamples";
+
+        long runs = Long.parseLong(stats.getProperty(prefix + ".runs", "0")) + 1;
+        long its = Long.parseLong(stats.getProperty(prefix + ".iterations", "0")) + iterations;
+        stats.setProperty(prefix + ".runs", String.valueOf(runs));
+        stats.setProperty(prefix + ".iterations", String.valueOf(its));
+
+        try (Writer writer = Files.newBufferedWriter(dir.resolve("stats.properties"), StandardCharsets.UTF_8)) {
+            stats.store(writer, "CodingAI retrieval stats");
+        } catch (IOException e) {
+            logger.accept("Failed to store retrieval stats: " + e.getMessage());
+        }
+
+        long withRuns = Long.parseLong(stats.getProperty("withExamples.runs", "0"));
+        long withIts = Long.parseLong(stats.getProperty("withExamples.iterations", "0"));
+        long withoutRuns = Long.parseLong(stats.getProperty("withoutExamples.runs", "0"));
+        long withoutIts = Long.parseLong(stats.getProperty("withoutExamples.iterations", "0"));
+
+        double hitRate = 100.0 * withRuns / Math.max(1, withRuns + withoutRuns);
+        double avgWith = withRuns == 0 ? 0 : (double) withIts / withRuns;
+        double avgWithout = withoutRuns == 0 ? 0 : (double) withoutIts / withoutRuns;
+
+        return String.format("Retrieval: hit rate %.0f%% of %d green runs, avg iterations %.1f with examples vs %.1f without",
+                hitRate, withRuns + withoutRuns, avgWith, avgWithout);
+    }
+
+    // ------------------------------------------------------------
+    // LOADING AND INDEXING
+    // ------------------------------------------------------------
+
+    private void load() {
+        if (!Files.isDirectory(dir)) return;
+
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".properties"))
+                    .filter(p -> !p.getFileName().toString().equals("stats.properties"))
+                    .forEach(p -> {
+                        Properties props = new Properties();
+                        try (Reader reader = Files.newBufferedReader(p, StandardCharsets.UTF_8)) {
+                            props.load(reader);
+                            index(props);
+                        } catch (IOException e) {
+                            logger.accept("Skipping unreadable solution " + p + ": " + e.getMessage());
+                        }
+                    });
+        } catch (IOException e) {
+            logger.accept("Failed to load solution library: " + e.getMessage());
+        }
+
+        logger.accept("Loaded " + solutions.size() + " green solutions from " + dir);
+    }
+
+    private void index(Properties props) {
+        Solution s = new Solution();
+        s.className = props.getProperty("className", "");
+        s.specification = props.getProperty("specification", "");
+        s.testSource = props.getProperty("testSource", "");
+        s.solution = props.getProperty("solution", "");
+
+        List<String> tokens = tokenize(s.specification + "\n" + s.testSource);
+        s.terms = termCounts(tokens);
+        s.length = tokens.size();
+
+        for (String term : s.terms.keySet()) {
+            documentFrequency.merge(term, 1, Integer::sum);
+        }
+        totalLength += s.length;
+        solutions.add(s);
+    }
+
+    private Properties loadStats() {
+        Properties stats = new Properties();
+        Path file = dir.resolve("stats.properties");
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                stats.load(reader);
+            } catch (IOException e) {
+                logger.accept("Failed to read retrieval stats: " + e.getMessage());
+            }
+        }
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException ignored) {
+            // Reported when writing.
+        }
+        return stats;
+    }
+
+    /**
+     * Splits text into lower-case words, also splitting camelCase identifiers
+     * (nextPrimeNumbers gives next, prime, numbers and nextprimenumbers).
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String word : text.split("[^A-Za-z0-9]+")) {
+            if (word.length() < 2) continue;
+
+            String lower = word.toLowerCase();
+            tokens.add(lower);
+
+            String[] parts = word.split("(?<=[a-z0-9])(?=[A-Z])");
+            if (parts.length > 1) {
+                for (String part : parts) {
+                    if (part.length() >= 2) tokens.add(part.toLowerCase());
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static Map<String, Integer> termCounts(List<String> tokens) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String t : tokens) {
+            counts.merge(t, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private static class Solution {
+        String className;
+        String specification;
+        String testSource;
+        String solution;
+        Map<String, Integer> terms;
+        int length;
+    }
+}
@@ -0,0 +1,155 @@
+package nl.mihaly.main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A stand-in for Ollama used by LoadTest.
+ *
+ * Answers /api/generate after a configurable latency with a class
+ * "Sample&lt;n&gt;" in package "bench" that adds two numbers. Per class, the
+ * answers follow a script: "pass" is correct code, "fail" subtracts instead of
+ * adds, "compile" does not compile, "lint" is correct but concatenates a
+ * String in a loop (see PerformanceLint). The last entry repeats. Structured
+ * requests (with a "format") get the JSON document, others a ```java fence.
+ */
+class StubOllama {
+
+    // The class a prompt is about; other sample names can appear in retrieved examples.
+    private static final Pattern TARGET_CLASS =
+            Pattern.compile("work ONLY on the following class:(?:\\s|\\\\n)*(Sample\\d+)\\b");
+    private static final Pattern CLASS_NAME = Pattern.compile("\\bSample\\d+\\b");
+
+    private final HttpServer server;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final List<String> script;
+    private final Random random = new Random(42);
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    StubOllama(long latencyMillis, long jitterMillis, List<String> script) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.script = script;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stub-ollama");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/api/tags", ex -> reply(ex, """
+                {"models": [{"name": "deepseek-coder-v2:16b"}, {"name": "deepseek-r1:70b"}]}"""));
+        server.createContext("/api/generate", this::generate);
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    long calls() {
+        return calls.get();
+    }
+
+    /**
+     * Returns the highest number of concurrent requests since the last call.
+     */
+    int takeMaxInFlight() {
+        return maxInFlight.getAndSet(inFlight.get());
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    private void generate(HttpExchange ex) throws IOException {
+        int now = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(now, Math::max);
+        calls.incrementAndGet();
+
+        try {
+            String request = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+            long delay = latencyMillis;
+            if (jitterMillis > 0) {
+                synchronized (random) {
+                    delay += (long) (random.nextGaussian() * jitterMillis);
+                }
+            }
+            Thread.sleep(Math.max(0, delay));
+
+            Matcher m = TARGET_CLASS.matcher(request);
+            Matcher any = CLASS_NAME.matcher(request);
+            String className = m.find() ? m.group(1) : any.find() ? any.group() : "Sample0";
+            int attempt = attempts.computeIfAbsent(className, k -> new AtomicInteger()).getAndIncrement();
+            String step = script.get(Math.min(attempt, script.size() - 1));
+
+            String source = source(className, step);
+            String response = request.contains("\"format\"")
+                    ? "{\"packageName\": \"bench\", \"className\": \"" + className + "\", \"source\": \""
+                    + Json.escape(source) + "\", \"rationale\": \"scripted " + step + "\"}"
+                    : "```java\n" + source + "\n```\n";
+
+            reply(ex, "{\"model\": \"stub\", \"response\": \"" + Json.escape(response) + "\", \"done\": true, "
+                    + "\"done_reason\": \"stop\", \"prompt_eval_count\": " + request.length() / 4
+                    + ", \"eval_count\": " + response.length() / 4
+                    + ", \"eval_duration\": " + delay * 1_000_000 + "}");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ex.sendResponseHeaders(500, -1);
+        } finally {
+            inFlight.decrementAndGet();
+            ex.close();
+        }
+    }
+
+    static String source(String className, String step) {
+        String body = switch (step) {
+            case "fail" -> "return a - b;";
+            case "compile" -> "return a +;";
+            case "lint" -> """
+                    String digits = "";
+                            for (int i = 0; i < 3; i++) digits += i;
+                            return a + b + digits.length() - 3;""";
+            default -> "return a + b;";
+        };
+        return """
+                package bench;
+
+                public class %s {
+
+                    public int add(int a, int b) {
+                        %s
+                    }
+                }""".formatted(className, body);
+    }
+
+    private static void reply(HttpExchange ex, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Maps simple class names to fully qualified names, for adding missing imports.
+ *
+ * Sources, in order of preference:
+ * - imports already used by the project's test classes
+ * - classes of the project itself (main and test sources)
+ * - public classes of the JDK's java.* modules
+ * - classes in the jars of the pom's dependencies in the local Maven repository
+ *
+ * The JDK part is built once per JVM and shared, the dependency part once per
+ * pom (as long as all its jars were found). Project classes are read from the
+ * ProjectIndex each time, so they are always current.
+ */
+public class SymbolIndex {
+
+    /**
+     * Preferred JDK packages when a simple name exists in several of them (List, Date, ...).
+     */
+    private static final List<String> PREFERRED_PACKAGES = List.of(
+            "java.util",
+            "java.util.function",
+            "java.util.stream",
+            "java.util.concurrent",
+            "java.util.concurrent.atomic",
+            "java.util.regex",
+            "java.io",
+            "java.nio.file",
+            "java.nio.charset",
+            "java.time",
+            "java.math",
+            "java.net",
+            "java.text"
+    );
+
+    private static final Pattern IMPORT = Pattern.compile("(?m)^\\s*import\\s+([\\w.]+)\\.(\\w+)\\s*;");
+    private static final Pattern DEPENDENCY = Pattern.compile("<dependency>[\\s\\S]*?</dependency>");
+
+    private static Map<String, List<String>> jdkIndex;
+    private static final Map<String, Map<String, List<String>>> JAR_INDEXES = new ConcurrentHashMap<>();
+
+    private final Consumer<String> logger;
+    private final Map<String, String> testImports = new HashMap<>();
+    private final Map<String, List<String>> projectClasses = new HashMap<>();
+    private final Map<String, List<String>> jarClasses;
+
+    public SymbolIndex(ProjectIndex project, Consumer<String> logger) {
+        this.logger = logger;
+        indexProject(project);
+        this.jarClasses = dependencyJars(project.getProjectRoot());
+    }
+
+    /**
+     * Returns the fully qualified name for a simple class name, or null if it is
+     * unknown or ambiguous.
+     */
+    public String resolve(String simpleName) {
+        String fromTests = testImports.get(simpleName);
+        if (fromTests != null) return fromTests;
+
+        List<String> own = projectClasses.getOrDefault(simpleName, List.of());
+        if (own.size() == 1) return own.get(0);
+        if (own.size() > 1) return null;
+
+        String jdk = resolveJdk(simpleName, logger);
+        if (jdk != null) return jdk;
+
+        List<String> jars = jarClasses.getOrDefault(simpleName, List.of());
+        return jars.size() == 1 ? jars.get(0) : null;
+    }
+
+    // ------------------------------------------------------------
+    // PROJECT
+    // ------------------------------------------------------------
+
+    private void indexProject(ProjectIndex project) {
+        Path root = project.getProjectRoot();
+        Path testRoot = root.resolve("src/test/java");
+
+        for (String pkg : project.packages()) {
+            for (Path file : project.filesInPackage(pkg)) {
+                String name = file.getFileName().toString().replace(".java", "");
+                String fqcn = pkg.isBlank() ? name : pkg + "." + name;
+                projectClasses.computeIfAbsent(name, k -> new ArrayList<>()).add(fqcn);
+
+                if (file.startsWith(testRoot)) {
+                    String source = project.source(file);
+                    if (source == null) continue;
+                    Matcher m = IMPORT.matcher(source);
+                    while (m.find()) {
+                        testImports.putIfAbsent(m.group(2), m.group(1) + "." + m.group(2));
+                    }
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------
+    // JDK
+    // ------------------------------------------------------------
+
+    private static String resolveJdk(String simpleName, Consumer<String> logger) {
+        List<String> candidates = new ArrayList<>(jdk(logger).getOrDefault(simpleName, List.of()));
+        candidates.removeIf(fqcn -> !isPublic(fqcn));
+        if (candidates.isEmpty()) return null;
+
+        candidates.sort(Comparator.comparingInt(SymbolIndex::packageRank));
+
+        String best = candidates.get(0);
+        if (candidates.size() > 1 && packageRank(best) == packageRank(candidates.get(1))) {
+            return null;
+        }
+        return best;
+    }
+
+    private static int packageRank(String fqcn) {
+        String pkg = fqcn.substring(0, fqcn.lastIndexOf('.'));
+        int rank = PREFERRED_PACKAGES.indexOf(pkg);
+        return rank >= 0 ? rank : PREFERRED_PACKAGES.size();
+    }
+
+    private static boolean isPublic(String fqcn) {
+        try {
+            return Modifier.isPublic(Class.forName(fqcn, false, ClassLoader.getPlatformClassLoader()).getModifiers());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static synchronized Map<String, List<String>> jdk(Consumer<String> logger) {
+        if (jdkIndex != null) return jdkIndex;
+
+        Map<String, List<String>> index = new HashMap<>();
+        try {
+            FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+            try (Stream<Path> modules = Files.list(jrt.getPath("/modules"))) {
+                for (Path module : (Iterable<Path>) modules::iterator) {
+                    if (!module.getFileName().toString().startsWith("java.")) continue;
+
+                    try (Stream<Path> files = Files.walk(module)) {
+                        files.forEach(file -> {
+                            String rel = module.relativize(file).toString();
+                            addClassEntry(index, rel);
+                        });
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.accept("Failed to index JDK classes: " + e.getMessage());
+        }
+
+        jdkIndex = index;
+        return index;
+    }
+
+    // ------------------------------------------------------------
+    // DEPENDENCY JARS
+    // ------------------------------------------------------------
+
+    private Map<String, List<String>> dependencyJars(Path projectRoot) {
+        Path pom = projectRoot.resolve("pom.xml");
+        if (!Files.exists(pom)) return Map.of();
+
+        String pomText;
+        try {
+            pomText = Files.readString(pom, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.accept("Cannot read " + pom + ": " + e.getMessage());
+            return Map.of();
+        }
+
+        String key = ProjectIndex.sha256(pomText);
+        Map<String, List<String>> cached = JAR_INDEXES.get(key);
+        if (cached != null) return cached;
+
+        Map<String, List<String>> classes = new HashMap<>();
+        boolean complete = indexDependencyJars(pomText, classes);
+        // Jars that are not downloaded yet may be there next time.
+        if (complete) JAR_INDEXES.put(key, classes);
+        return classes;
+    }
+
+    /**
+     * Adds the classes of the pom's dependency jars. Returns false if a jar
+     * could not be found or read.
+     */
+    private boolean indexDependencyJars(String pomText, Map<String, List<String>> jarClasses) {
+        Path repo = Paths.get(System.getProperty("user.home"), ".m2", "repository");
+        boolean complete = true;
+
+        try {
+            Matcher m = DEPENDENCY.matcher(pomText);
+
+            while (m.find()) {
+                String dep = m.group();
+                String g = tag(dep, "groupId");
+                String a = tag(dep, "artifactId");
+                String v = tag(dep, "version");
+                if (g == null || a == null || v == null || v.contains("$")) continue;
+
+                Path jar = repo.resolve(g.replace('.', '/')).resolve(a).resolve(v).resolve(a + "-" + v + ".jar");
+                if (!Files.exists(jar)) {
+                    complete = false;
+                    continue;
+                }
+
+                try (JarFile jf = new JarFile(jar.toFile())) {
+                    jf.stream().forEach(entry -> addClassEntry(jarClasses, entry.getName()));
+                }
+            }
+        } catch (IOException e) {
+            // Jar lookup is best-effort; JDK and project classes still resolve.
+            logger.accept("Cannot index dependency jars: " + e.getMessage());
+            complete = false;
+        }
+        return complete;
+    }
+
+    private static String tag(String xml, String tag) {
+        Matcher m = Pattern.compile("<" + tag + ">(.*?)</" + tag + ">").matcher(xml);
+        return m.find() ? m.group(1).trim() : null;
+    }
+
+    private static void addClassEntry(Map<String, List<String>> index, String path) {
+        if (!path.endsWith(".class") || path.contains("$")) return;
+        if (path.endsWith("module-info.class") || path.endsWith("package-info.class")) return;
+        if (path.startsWith("META-INF")) return;
+
+        String fqcn = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+        if (fqcn.contains(".internal.") || fqcn.startsWith("sun.") || fqcn.startsWith("jdk.")) return;
+
+        String simple = fqcn.substring(fqcn.lastIndexOf('.') + 1);
+        index.computeIfAbsent(simple, k -> new ArrayList<>()).add(fqcn);
+    }
+}
@@ -0,0 +1,110 @@
+package nl.mihaly.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Structured view of one Maven test run, parsed from its console output.
+ */
+public class TestResult {
+
+    private static final Pattern SUMMARY =
+            Pattern.compile("Tests run: (\\d+), Failures: (\\d+), Errors: (\\d+), Skipped: (\\d+)");
+
+    private static final Pattern FAILING_TEST =
+            Pattern.compile("(?m)^\\[ERROR]\\s{2,}([\\w$.]+?[.#][\\w$\\[\\]]+)[:( ]");
+
+    private static final Pattern COMPILE_ERROR =
+            Pattern.compile("(?m)^\\[ERROR]\\s+\\S.*?\\.java:\\[\\d+,\\d+]");
+
+    public final String output;
+    public final boolean green;
+    public final boolean compilationError;
+    public final boolean dependencyError;
+    public final boolean timeout;
+    public final int testsRun;
+    public final int failures;
+    public final int errors;
+    public final int skipped;
+    public final int compileErrors;
+    public final List<String> failingTests;
+
+    private TestResult(String output, boolean green, boolean compilationError, boolean dependencyError,
+                       boolean timeout, int testsRun, int failures, int errors, int skipped,
+                       int compileErrors, List<String> failingTests) {
+        this.output = output;
+        this.green = green;
+        this.compilationError = compilationError;
+        this.dependencyError = dependencyError;
+        this.timeout = timeout;
+        this.testsRun = testsRun;
+        this.failures = failures;
+        this.errors = errors;
+        this.skipped = skipped;
+        this.compileErrors = compileErrors;
+        this.failingTests = failingTests;
+    }
+
+    public static TestResult parse(String output) {
+        String out = output == null ? "" : output;
+        String lower = out.toLowerCase();
+
+        boolean green = out.contains("BUILD SUCCESS");
+        boolean compilation = out.contains("COMPILATION ERROR") || out.contains("Compilation failure");
+        boolean dependency = lower.contains("could not resolve dependencies")
+                || lower.contains("missing artifact")
+                || (lower.contains("was not found in") && lower.contains("repository"))
+                || lower.contains("failed to read artifact descriptor")
+                || lower.contains("dependencyresolutionexception");
+        boolean timeout = out.contains("TimeoutException")
+                || lower.contains("timed out after")
+                || lower.contains("there was a timeout in the fork");
+
+        // The last summary line is the total over all test classes.
+        int run = 0, failures = 0, errors = 0, skipped = 0;
+        Matcher summary = SUMMARY.matcher(out);
+        while (summary.find()) {
+            run = Integer.parseInt(summary.group(1));
+            failures = Integer.parseInt(summary.group(2));
+            errors = Integer.parseInt(summary.group(3));
+            skipped = Integer.parseInt(summary.group(4));
+        }
+
+        int compileErrors = 0;
+        Matcher compile = COMPILE_ERROR.matcher(out);
+        while (compile.find()) {
+            compileErrors++;
+        }
+
+        List<String> failing = new ArrayList<>();
+        Matcher test = FAILING_TEST.matcher(out);
+        while (test.find()) {
+            String name = test.group(1);
+            if (!failing.contains(name)) failing.add(name);
+        }
+
+        return new TestResult(out, green, compilation, dependency, timeout, run, failures, errors, skipped,
+                compileErrors, Collections.unmodifiableList(failing));
+    }
+
+    /**
+     * Number of problems, for comparing candidates: 0 when green, failing tests
+     * otherwise, and worse than any test failure when the build does not compile.
+     */
+    public int failureCount() {
+        if (green) return 0;
+        if (compilationError || dependencyError) return 10_000 + compileErrors;
+        int count = failures + errors;
+        return count == 0 ? Math.max(1, failingTests.size()) : count;
+    }
+
+    public String summary() {
+        if (green) return "green (" + testsRun + " tests)";
+        if (compilationError) return "compilation error (" + compileErrors + " errors)";
+        if (dependencyError) return "dependency resolution error";
+        return testsRun + " tests, " + failures + " failures, " + errors + " errors";
+    }
+}
@@ -0,0 +1,151 @@
+package nl.mihaly.main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Remembers the test result of every candidate that was built, so a candidate
+ * the model returns again does not need another Maven run.
+ *
+ * The key combines the hash of the class source, the test sources, the other
+ * main sources (a candidate can fail because a sibling class is broken) and
+ * the pom's dependencies. Results are stored per project under
+ * ~/.codingai/memo and survive across runs; beyond memo.maxEntries results
+ * in total, the least recently used ones are deleted.
+ */
+public class TestResultMemo {
+
+    private static final Pattern DEPENDENCIES = Pattern.compile("(?s)<dependencies>.*?</dependencies>");
+    private static final int EVICT_EVERY = 50;
+
+    private static int recordsSinceEviction = EVICT_EVERY;
+
+    private final Consumer<String> logger;
+    private final Path root;
+    private final Path dir;
+    private final int maxEntries;
+
+    private int hits;
+    private int lookups;
+
+    public TestResultMemo(Consumer<String> logger, Path projectRoot) {
+        this.logger = logger;
+        String projectKey = ProjectIndex.sha256(projectRoot.toAbsolutePath().normalize().toString()).substring(0, 16);
+        this.root = Paths.get(System.getProperty("user.home"), ".codingai", "memo");
+        this.dir = root.resolve(projectKey);
+        this.maxEntries = Settings.getInt("memo.maxEntries", 5000);
+    }
+
+    /**
+     * Builds the memo key for a candidate in the given project.
+     */
+    public String key(String classSource, String testSource, Path projectRoot) {
+        return ProjectIndex.sha256(
+                ProjectIndex.sha256(classSource == null ? "" : classSource)
+                        + ProjectIndex.sha256(testSource == null ? "" : testSource)
+                        + ProjectIndex.forProject(projectRoot, logger).mainSourcesHash()
+                        + pomDependencyHash(projectRoot));
+    }
+
+    /**
+     * Returns the recorded result for the key, or null if this candidate was never built.
+     */
+    public TestResult lookup(String key) {
+        lookups++;
+        Path file = dir.resolve(key + ".txt");
+        if (!Files.exists(file)) {
+            AgentEvents.cacheLookup("test results", false);
+            return null;
+        }
+
+        try {
+            TestResult result = TestResult.parse(Files.readString(file, StandardCharsets.UTF_8));
+            // The modification time serves as last use for eviction.
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            hits++;
+            AgentEvents.cacheLookup("test results", true);
+            return result;
+        } catch (IOException e) {
+            logger.accept("Failed to read memoized test result: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void record(String key, String testOutput) {
+        try {
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve(key + ".txt"), testOutput, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.accept("Failed to store test result: " + e.getMessage());
+        }
+
+        synchronized (TestResultMemo.class) {
+            if (++recordsSinceEviction < EVICT_EVERY) return;
+            recordsSinceEviction = 0;
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used results of all projects beyond memo.maxEntries.
+     */
+    private void evict() {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root, 2)) {
+            files = walk.filter(p -> p.toString().endsWith(".txt")).collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.accept("Failed to list memoized test results: " + e.getMessage());
+            return;
+        }
+        if (files.size() <= maxEntries) return;
+
+        Map<Path, Long> lastUse = new HashMap<>();
+        for (Path file : files) {
+            try {
+                lastUse.put(file, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                lastUse.put(file, 0L);
+            }
+        }
+        files.sort(Comparator.comparing(lastUse::get));
+
+        int deleted = 0;
+        for (Path file : files.subList(0, files.size() - maxEntries)) {
+            try {
+                Files.deleteIfExists(file);
+                deleted++;
+            } catch (IOException ignored) {
+                // Another run may be reading or deleting it; next eviction retries.
+            }
+        }
+        logger.accept("Evicted " + deleted + " memoized test results (memo.maxEntries " + maxEntries + ").");
+    }
+
+    public String stats() {
+        return "memo hits " + hits + "/" + lookups;
+    }
+
+    private String pomDependencyHash(Path projectRoot) {
+        try {
+            String pom = Files.readString(projectRoot.resolve("pom.xml"), StandardCharsets.UTF_8);
+            StringBuilder deps = new StringBuilder();
+            Matcher m = DEPENDENCIES.matcher(pom);
+            while (m.find()) {
+                deps.append(m.group().replaceAll("\\s+", ""));
+            }
+            return ProjectIndex.sha256(deps.toString());
+        } catch (IOException e) {
+            return "";
+        }
+    }
+}
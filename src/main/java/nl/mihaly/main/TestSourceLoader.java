@@ -1,7 +1,7 @@
 package nl.mihaly.main;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public class TestSourceLoader {
@@ -16,26 +16,30 @@ public class TestSourceLoader {
         this.className = className;
     }
 
+    /**
+     * Returns the source of every test class that references the target class.
+     * The conventional ClassNameTest comes first; further test classes are appended.
+     */
     public String loadTestSource(Path projectRoot) {
         try {
-            if (packageName == null || packageName.isBlank()) {
-                logger.accept("No package name provided, cannot locate test class reliably.");
+            ProjectIndex index = ProjectIndex.forProject(projectRoot, logger);
+            Map<Path, String> tests = index.testsReferencing(packageName, className);
+
+            if (tests.isEmpty()) {
+                logger.accept("No test class found referencing " + className);
                 return "";
             }
 
-            Path testPath = projectRoot
-                    .resolve("src/test/java")
-                    .resolve(packageName.replace('.', '/'))
-                    .resolve(className + "Test.java");
-
-            if (Files.exists(testPath)) {
-                String src = Files.readString(testPath);
-                logger.accept("Loaded test class: " + testPath);
-                return src;
-            } else {
-                logger.accept("Test class not found: " + testPath);
-                return "";
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Path, String> test : tests.entrySet()) {
+                logger.accept("Loaded test class: " + test.getKey());
+                if (sb.length() > 0) {
+                    sb.append("\n\n// ---- ").append(test.getKey().getFileName()).append(" ----\n");
+                }
+                sb.append(test.getValue());
             }
+            return sb.toString();
+
         } catch (Exception e) {
             logger.accept("Failed to read test class: " + e.getMessage());
             return "";
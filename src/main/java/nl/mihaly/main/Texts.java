@@ -42,8 +42,43 @@ public interface Texts {
     %s
     """;
 
+    String EDIT_PROMPT = """
+    You are an AI Java TDD assistant.
+
+    The user wants you to work ONLY on the following class:
+    %s
+
+    This class is placed in the following package (if not empty):
+    %s
+
+    The class already exists and is large. Do NOT rewrite the entire file.
+    Return ONLY the changes needed to make the tests pass.
+
+    Specification / intended behavior:
+    %s
+
+    Here is the full JUnit test class that must pass:
+    %s
+
+    Here is the current source of the class:
+    %s
+
+    Below is the JUnit test output showing the failures.
+    Your task:
+    - Change ONLY what is needed in the specified class.
+    - Return the changes in ONE of these two formats:
+      1. A unified diff against the current source, wrapped in a ```diff ... ``` block.
+         Use @@ -start,count +start,count @@ hunk headers and include 3 lines of context.
+      2. One or more complete method declarations, each in its own ```java ... ``` block.
+         Each method replaces the existing method with the same name, or is added if it is new.
+    - Do NOT include explanations, comments, or prose.
+
+    Test output:
+    %s
+    """;
+
     String FALLBACKPROMPT = """
-    You are a high‑reasoning Java expert (deepseek-r1-70b).
+    You are a high‑reasoning Java expert.
 
     The smaller model failed to fix the class after 30 attempts.
     Now you must produce a fully correct solution.
@@ -94,4 +129,49 @@ public interface Texts {
     Test output:
     %s
     """;
+
+    String STRUCTURED_OUTPUT = """
+
+    Output format:
+    Ignore the instruction about a ```java block. Answer with ONE JSON object with the fields
+    "packageName", "className", "source" (the full Java source as a string) and
+    "rationale" (one sentence). Output nothing outside the JSON object.
+    """;
+
+    String ALREADY_TRIED = """
+    NOTE: The class you just returned is IDENTICAL to a candidate that was already tested.
+    It produced the test output below. Do NOT return the same code again;
+    produce a different implementation that fixes these failures.
+
+    """;
+
+    String PERFORMANCE_FINDINGS = """
+
+    Performance findings in the current class (optional: fix them only where it does not
+    get in the way of the tests, and keep the behavior the same):
+    %s""";
+
+    String PERFORMANCE_FIX = """
+    NOTE: All tests pass, but the class has the performance problems below.
+    Fix them without changing its behavior; the tests must still pass.
+    %s
+    """;
+
+    String EXAMPLES = """
+    Below are classes from earlier tasks that passed all their tests.
+    Use them ONLY as examples of style and approach; the task that follows is different.
+
+    %s
+    """;
+
+    String EXAMPLE = """
+    Example class: %s
+    Specification:
+    %s
+    Solution:
+    ```java
+    %s
+    ```
+
+    """;
 }
@@ -1,4 +1,4 @@
-package $org.example;
+package ${package};
 
 /**
  * Hello world!
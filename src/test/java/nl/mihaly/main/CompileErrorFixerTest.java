@@ -0,0 +1,84 @@
+package nl.mihaly.main;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileErrorFixerTest {
+
+    private final CompileErrorFixer fixer = new CompileErrorFixer(msg -> { }, "demo.shop", "Order");
+
+    @Test
+    void forcesPackageAndClassName() {
+        String source = "package shop;\n\npublic class Purchase {\n    public Purchase() {\n    }\n}\n";
+
+        String result = fixer.normalize(source);
+
+        assertTrue(result.startsWith("package demo.shop;"));
+        assertTrue(result.contains("public class Order {"));
+        assertTrue(result.contains("public Order() {"));
+        assertFalse(result.contains("Purchase"));
+    }
+
+    @Test
+    void renamesSelfReferencesButNotLiteralsOrQualifiedNames() {
+        String source = String.join("\n",
+                "package demo.shop;",
+                "",
+                "// Purchase keeps its comment",
+                "public class Purchase implements Comparable<Purchase> {",
+                "    static Purchase of() { return new Purchase(); }",
+                "    public int compareTo(Purchase other) { return 0; }",
+                "    String name() { return \"Purchase\"; }",
+                "    Object legacy() { return old.Purchase.VALUE; }",
+                "}");
+
+        String result = fixer.normalize(source);
+
+        assertTrue(result.contains("public class Order implements Comparable<Order> {"));
+        assertTrue(result.contains("static Order of() { return new Order(); }"));
+        assertTrue(result.contains("compareTo(Order other)"));
+        assertTrue(result.contains("// Purchase keeps its comment"));
+        assertTrue(result.contains("return \"Purchase\";"));
+        assertTrue(result.contains("old.Purchase.VALUE"));
+    }
+
+    @Test
+    void leavesNestedTypesAlone() {
+        String source = String.join("\n",
+                "package demo.shop;",
+                "",
+                "class Helper {",
+                "}",
+                "",
+                "public class Purchase {",
+                "    static class Line {",
+                "    }",
+                "}");
+
+        String result = fixer.normalize(source);
+
+        assertTrue(result.contains("class Helper {"));
+        assertTrue(result.contains("public class Order {"));
+        assertTrue(result.contains("static class Line {"));
+    }
+
+    @Test
+    void keepsCorrectSourceUnchanged() {
+        String source = "package demo.shop;\n\npublic class Order {\n    String s = \"class Other\";\n}\n";
+
+        assertEquals(source, fixer.normalize(source));
+    }
+
+    @Test
+    void masksCommentsAndLiteralsKeepingPositions() {
+        String source = "int a = 1; // class X\nString s = \"class Y\"; char c = '{';";
+
+        String masked = CompileErrorFixer.maskLiterals(source);
+
+        assertEquals(source.length(), masked.length());
+        assertFalse(masked.contains("class"));
+        assertFalse(masked.contains("{"));
+        assertTrue(masked.startsWith("int a = 1;"));
+    }
+}
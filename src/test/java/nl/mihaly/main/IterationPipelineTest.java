@@ -0,0 +1,41 @@
+package nl.mihaly.main;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IterationPipelineTest {
+
+    @Test
+    void signatureIgnoresTimingsAndInfoLines() {
+        String slower = TestResultTest.FAILING
+                .replace("Time elapsed: 0.042 s", "Time elapsed: 1.317 s")
+                .replace("Time elapsed: 0.004 s", "Time elapsed: 0.100 s")
+                .replace("[INFO] Running demo.OrderTest", "[INFO] Running demo.OrderTest (again)");
+
+        assertEquals(IterationPipeline.failureSignature(TestResultTest.FAILING),
+                IterationPipeline.failureSignature(slower));
+    }
+
+    @Test
+    void signatureChangesWithFailures() {
+        String other = TestResultTest.FAILING.replace("but was: <9>", "but was: <8>");
+
+        assertNotEquals(IterationPipeline.failureSignature(TestResultTest.FAILING),
+                IterationPipeline.failureSignature(other));
+    }
+
+    @Test
+    void signatureSkipsMavenHelpLines() {
+        String signature = IterationPipeline.failureSignature(String.join("\n",
+                "[ERROR]   OrderTest.total:14 expected: <10> but was: <9>",
+                "[ERROR] ",
+                "[ERROR] To see the full stack trace of the errors, re-run Maven with the -e switch.",
+                "[ERROR] Re-run Maven using the -X switch to enable full debug logging.",
+                "[ERROR] For more information about the errors and possible solutions, please read:",
+                "[ERROR] [Help 1] http://cwiki.apache.org/confluence/display/MAVEN/MojoFailureException"));
+
+        assertEquals("[ERROR]   OrderTest.total:14 expected: <10> but was: <9>\n", signature);
+        assertEquals("", IterationPipeline.failureSignature(null));
+    }
+}
@@ -0,0 +1,68 @@
+package nl.mihaly.main;
+
+import nl.mihaly.main.MultiTargetRunner.ClassSpec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiTargetRunnerTest {
+
+    @TempDir
+    Path root;
+
+    @AfterEach
+    void releaseIndex() {
+        ProjectIndex.release(root);
+    }
+
+    @Test
+    void ownTestsAreMatchedByExactName() {
+        assertTrue(MultiTargetRunner.isOwnTest(Path.of("shop/OrderTest.java"), "Order"));
+        assertTrue(MultiTargetRunner.isOwnTest(Path.of("shop/OrderTests.java"), "Order"));
+        assertTrue(MultiTargetRunner.isOwnTest(Path.of("shop/OrderIT.java"), "Order"));
+        assertFalse(MultiTargetRunner.isOwnTest(Path.of("shop/OrderParserTest.java"), "Order"));
+        assertFalse(MultiTargetRunner.isOwnTest(Path.of("shop/Order.java"), "Order"));
+    }
+
+    @Test
+    void testOfAnotherTargetWithTheSamePrefixIsNotOwnTest() throws IOException {
+        writeTest("OrderTest", "class OrderTest { Order order = new Order(); }");
+        writeTest("OrderParserTest", "class OrderParserTest { Order o = new OrderParser().parse(\"1\"); }");
+
+        ClassSpec order = new ClassSpec("shop", "Order", "An order.");
+        ClassSpec parser = new ClassSpec("shop", "OrderParser", "Parses orders.");
+        MultiTargetRunner runner = new MultiTargetRunner(msg -> { }, root, List.of(order, parser));
+        runner.buildGraph();
+
+        assertEquals(Set.of(root.resolve("src/test/java/shop/OrderTest.java")), runner.ownTestsOf(order));
+        assertEquals(Set.of(), runner.dependenciesOf(order));
+        assertEquals(Set.of(order), runner.dependenciesOf(parser));
+    }
+
+    @Test
+    void cyclesAreBroken() throws IOException {
+        writeTest("ATest", "class ATest { A a; B b; }");
+        writeTest("BTest", "class BTest { B b; A a; }");
+
+        ClassSpec a = new ClassSpec("shop", "A", "");
+        ClassSpec b = new ClassSpec("shop", "B", "");
+        MultiTargetRunner runner = new MultiTargetRunner(msg -> { }, root, List.of(a, b));
+        runner.buildGraph();
+
+        assertTrue(runner.dependenciesOf(a).isEmpty() || runner.dependenciesOf(b).isEmpty());
+    }
+
+    private void writeTest(String name, String body) throws IOException {
+        Path file = root.resolve("src/test/java/shop/" + name + ".java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "package shop;\n\n" + body + "\n");
+    }
+}
@@ -0,0 +1,61 @@
+package nl.mihaly.main;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelTestsTest {
+
+    @Test
+    void countsPlainRepeatedAndParameterizedCases() {
+        String source = String.join("\n",
+                "class OrderTest {",
+                "    @Test void a() { }",
+                "    @Test void b() { }",
+                "    @RepeatedTest(5) void c() { }",
+                "    @RepeatedTest(value = 3) void d() { }",
+                "    @ParameterizedTest",
+                "    @ValueSource(ints = {1, 2, 3, 4})",
+                "    void e(int i) { }",
+                "    @ParameterizedTest",
+                "    @CsvSource({\"a, 1\", \"b, 2\"})",
+                "    void f(String s, int i) { }",
+                "    @ParameterizedTest",
+                "    @MethodSource(\"cases\")",
+                "    void g(int i) { }",
+                "}");
+
+        // 2 tests + 5 + 3 repetitions + 4 values + 2 rows + 10 assumed for @MethodSource
+        assertEquals(26, ParallelTests.countCases(source));
+    }
+
+    @Test
+    void detectsMutableStatics() {
+        assertTrue(ParallelTests.hasMutableStatics("class A {\n    static int counter;\n}"));
+        assertTrue(ParallelTests.hasMutableStatics("class A {\n    private static List<String> seen = new ArrayList<>();\n}"));
+    }
+
+    @Test
+    void ignoresConstantsMethodsAndNestedTypes() {
+        String source = String.join("\n",
+                "import static org.junit.jupiter.api.Assertions.*;",
+                "class A {",
+                "    private static final int LIMIT = 3;",
+                "    static final List<String> NAMES = List.of(\"a\");",
+                "    static int twice(int x) { return 2 * x; }",
+                "    static class Inner { }",
+                "    // static int commented;",
+                "}");
+
+        assertFalse(ParallelTests.hasMutableStatics(source));
+    }
+
+    @Test
+    void reportsUnsafeTestsUnlessExecutionIsExplicit() {
+        String unsafe = "class A {\n    @Test void a() { System.setProperty(\"x\", \"1\"); }\n}";
+
+        assertEquals(java.util.List.of("changes JVM-wide state"), ParallelTests.unsafeReasons(unsafe));
+        assertTrue(ParallelTests.unsafeReasons("@Isolated\n" + unsafe).isEmpty());
+        assertTrue(ParallelTests.unsafeReasons("class A {\n    @Test void a() { }\n}").isEmpty());
+    }
+}
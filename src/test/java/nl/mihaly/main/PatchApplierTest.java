@@ -0,0 +1,115 @@
+package nl.mihaly.main;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatchApplierTest {
+
+    private static final String SOURCE = String.join("\n",
+            "package demo;",
+            "",
+            "public class Counter {",
+            "    private int count;",
+            "",
+            "    public void increment() {",
+            "        count++;",
+            "    }",
+            "",
+            "    public int get() {",
+            "        return count;",
+            "    }",
+            "}");
+
+    private final PatchApplier patcher = new PatchApplier(msg -> { });
+
+    @Test
+    void appliesUnifiedDiff() {
+        String response = "Fix:\n```diff\n"
+                + "@@ -6,3 +6,3 @@\n"
+                + "     public void increment() {\n"
+                + "-        count++;\n"
+                + "+        count += 2;\n"
+                + "     }\n"
+                + "```\n";
+
+        String result = patcher.apply(SOURCE, response);
+
+        assertNotNull(result);
+        assertTrue(result.contains("count += 2;"));
+        assertFalse(result.contains("count++;"));
+    }
+
+    @Test
+    void findsHunkAtShiftedPosition() {
+        String response = "```diff\n"
+                + "@@ -1,3 +1,3 @@\n"
+                + "     public int get() {\n"
+                + "-        return count;\n"
+                + "+        return count * 10;\n"
+                + "```\n";
+
+        String result = patcher.apply(SOURCE, response);
+
+        assertNotNull(result);
+        assertTrue(result.contains("return count * 10;"));
+    }
+
+    @Test
+    void rejectsConflictingDiff() {
+        String response = "```diff\n"
+                + "@@ -6,3 +6,3 @@\n"
+                + "-        count--;\n"
+                + "+        count -= 2;\n"
+                + "```\n";
+
+        assertNull(patcher.apply(SOURCE, response));
+    }
+
+    @Test
+    void replacesMethodByName() {
+        String response = "```java\n"
+                + "public int get() {\n"
+                + "    return -count;\n"
+                + "}\n"
+                + "```\n";
+
+        String result = patcher.apply(SOURCE, response);
+
+        assertNotNull(result);
+        assertTrue(result.contains("        return -count;"));
+        assertFalse(result.contains("return count;"));
+        assertTrue(result.contains("count++;"));
+    }
+
+    @Test
+    void addsNewMethodBeforeClosingBrace() {
+        String response = "```java\n"
+                + "public void reset() {\n"
+                + "    count = 0;\n"
+                + "}\n"
+                + "```\n";
+
+        String result = patcher.apply(SOURCE, response);
+
+        assertNotNull(result);
+        assertTrue(result.contains("    public void reset() {"));
+        assertTrue(result.trim().endsWith("}"));
+        assertTrue(result.indexOf("reset()") > result.indexOf("get()"));
+    }
+
+    @Test
+    void rejectsOverloadedMethod() {
+        String overloaded = SOURCE.replace("    public int get() {",
+                "    public int get(int factor) {\n        return count * factor;\n    }\n\n    public int get() {");
+        String response = "```java\npublic int get() {\n    return 1;\n}\n```\n";
+
+        assertNull(patcher.apply(overloaded, response));
+    }
+
+    @Test
+    void rejectsResponseWithoutEdit() {
+        assertNull(patcher.apply(SOURCE, "I cannot help with that."));
+        assertNull(patcher.apply(null, "```diff\n@@ -1 +1 @@\n```"));
+    }
+}
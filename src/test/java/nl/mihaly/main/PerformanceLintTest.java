@@ -0,0 +1,108 @@
+package nl.mihaly.main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerformanceLintTest {
+
+    private final PerformanceLint lint = new PerformanceLint(msg -> { });
+
+    @Test
+    void findsStringConcatenationInLoop() {
+        List<PerformanceLint.Finding> findings = lint.check(String.join("\n",
+                "class Joiner {",
+                "    String join(List<String> parts) {",
+                "        String result = \"\";",
+                "        for (String p : parts) {",
+                "            result += p;",
+                "        }",
+                "        return result;",
+                "    }",
+                "}"));
+
+        assertEquals(List.of("string-concat-in-loop"), rules(findings));
+        assertEquals(5, findings.get(0).line);
+    }
+
+    @Test
+    void findsBoxingInLoop() {
+        List<String> rules = rules(lint.check(String.join("\n",
+                "class Sum {",
+                "    long sum(int[] values) {",
+                "        Long total = 0L;",
+                "        for (int v : values) {",
+                "            total = total + v;",
+                "        }",
+                "        return total;",
+                "    }",
+                "}")));
+
+        assertEquals(List.of("boxing-in-loop"), rules);
+    }
+
+    @Test
+    void findsRemoveHeadOnList() {
+        List<String> rules = rules(lint.check(String.join("\n",
+                "class Queue {",
+                "    List<Integer> items = new ArrayList<>();",
+                "    int next() {",
+                "        return items.remove(0);",
+                "    }",
+                "}")));
+
+        assertEquals(List.of("remove-head"), rules);
+    }
+
+    @Test
+    void findsRegexCompiledRepeatedly() {
+        List<String> rules = rules(lint.check(String.join("\n",
+                "class Words {",
+                "    int count(List<String> lines) {",
+                "        int n = 0;",
+                "        for (String line : lines) {",
+                "            n += line.split(\"\\\\s+\").length;",
+                "        }",
+                "        return n;",
+                "    }",
+                "    boolean valid(String s) {",
+                "        return Pattern.compile(\"[a-z]+\").matcher(s).matches();",
+                "    }",
+                "}")));
+
+        assertEquals(List.of("regex-recompiled", "regex-recompiled"), rules);
+    }
+
+    @Test
+    void acceptsEfficientCode() {
+        List<PerformanceLint.Finding> findings = lint.check(String.join("\n",
+                "class Fine {",
+                "    private static final Pattern WORD = Pattern.compile(\"[a-z]+\");",
+                "    String join(List<String> parts) {",
+                "        StringBuilder sb = new StringBuilder();",
+                "        int total = 0;",
+                "        for (String p : parts) {",
+                "            sb.append(p);",
+                "            total += p.split(\",\").length;",
+                "        }",
+                "        String label = \"n=\" + total;",
+                "        return label + sb;",
+                "    }",
+                "}"));
+
+        assertTrue(findings.isEmpty(), () -> PerformanceLint.format(findings));
+    }
+
+    @Test
+    void toleratesBrokenSource() {
+        assertTrue(lint.check(null).isEmpty());
+        assertNotNull(lint.check("class Broken { void m( { "));
+    }
+
+    private static List<String> rules(List<PerformanceLint.Finding> findings) {
+        return findings.stream().map(f -> f.rule).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,82 @@
+package nl.mihaly.main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestResultTest {
+
+    static final String FAILING = String.join("\n",
+            "[INFO] Running demo.OrderTest",
+            "[ERROR] Tests run: 3, Failures: 1, Errors: 1, Skipped: 0, Time elapsed: 0.042 s <<< FAILURE! -- in demo.OrderTest",
+            "[ERROR] demo.OrderTest.total -- Time elapsed: 0.004 s <<< FAILURE!",
+            "org.opentest4j.AssertionFailedError: expected: <10> but was: <9>",
+            "[INFO] ",
+            "[INFO] Results:",
+            "[INFO] ",
+            "[ERROR] Failures: ",
+            "[ERROR]   OrderTest.total:14 expected: <10> but was: <9>",
+            "[ERROR] Errors: ",
+            "[ERROR]   OrderTest.empty:20 NullPointer",
+            "[INFO] ",
+            "[ERROR] Tests run: 3, Failures: 1, Errors: 1, Skipped: 0",
+            "[INFO] BUILD FAILURE");
+
+    @Test
+    void parsesGreenRun() {
+        TestResult result = TestResult.parse(
+                "[INFO] Tests run: 5, Failures: 0, Errors: 0, Skipped: 1\n[INFO] BUILD SUCCESS\n");
+
+        assertTrue(result.green);
+        assertEquals(5, result.testsRun);
+        assertEquals(1, result.skipped);
+        assertEquals(0, result.failureCount());
+        assertEquals("green (5 tests)", result.summary());
+    }
+
+    @Test
+    void parsesFailuresFromLastSummary() {
+        TestResult result = TestResult.parse(FAILING);
+
+        assertFalse(result.green);
+        assertFalse(result.compilationError);
+        assertEquals(3, result.testsRun);
+        assertEquals(1, result.failures);
+        assertEquals(1, result.errors);
+        assertEquals(List.of("OrderTest.total", "OrderTest.empty"), result.failingTests);
+        assertEquals(2, result.failureCount());
+    }
+
+    @Test
+    void parsesCompilationError() {
+        TestResult result = TestResult.parse(String.join("\n",
+                "[ERROR] COMPILATION ERROR : ",
+                "[ERROR] /p/src/main/java/demo/Order.java:[12,9] cannot find symbol",
+                "[ERROR] /p/src/main/java/demo/Order.java:[15,5] ';' expected",
+                "[INFO] BUILD FAILURE"));
+
+        assertTrue(result.compilationError);
+        assertEquals(2, result.compileErrors);
+        assertTrue(result.failureCount() > 10_000);
+        assertEquals("compilation error (2 errors)", result.summary());
+    }
+
+    @Test
+    void detectsDependencyErrorAndTimeout() {
+        assertTrue(TestResult.parse("[ERROR] Failed to execute goal: Could not resolve dependencies for project")
+                .dependencyError);
+        assertTrue(TestResult.parse("[ERROR] There was a timeout in the fork").timeout);
+    }
+
+    @Test
+    void handlesMissingOutput() {
+        TestResult result = TestResult.parse(null);
+
+        assertFalse(result.green);
+        assertEquals(0, result.testsRun);
+        assertTrue(result.failingTests.isEmpty());
+        assertEquals(1, result.failureCount());
+    }
+}